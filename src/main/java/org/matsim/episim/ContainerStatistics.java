@@ -0,0 +1,127 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Group size statistics of all containers for the events of one day. The statistics of different days can be collected
+ * independently and are merged afterwards in the order of the days, with the same result as counting all events sequentially.
+ * <p>
+ * For each container only the prefix sums of the group size changes are stored, which is enough to compute the resulting
+ * group size and maximum group size for any group size at the beginning of the day.
+ */
+final class ContainerStatistics {
+
+	private final Map<EpisimContainer<?>, Partial> partials = new LinkedHashMap<>();
+
+	/**
+	 * A person enters the container.
+	 */
+	void enter(EpisimContainer<?> container) {
+		Partial p = partials.computeIfAbsent(container, k -> new Partial());
+		p.sum++;
+		p.starts++;
+		p.maxAfterEnter = Math.max(p.maxAfterEnter, p.sum);
+	}
+
+	/**
+	 * A person leaves the container.
+	 *
+	 * @param clamp whether the group size is prevented from becoming negative, this is done for facilities but not for vehicles
+	 */
+	void leave(EpisimContainer<?> container, String actType, boolean clamp) {
+		Partial p = partials.computeIfAbsent(container, k -> new Partial());
+		p.sum--;
+		if (clamp)
+			p.minAfterLeave = Math.min(p.minAfterLeave, p.sum);
+
+		if (p.usage == null)
+			p.usage = new Object2IntOpenHashMap<>(4);
+
+		p.usage.mergeInt(actType, 1, Integer::sum);
+	}
+
+	/**
+	 * Applies the statistics of this day to the statistics of all previous days.
+	 */
+	void mergeInto(Object2IntMap<EpisimContainer<?>> groupSize, Object2IntMap<EpisimContainer<?>> maxGroupSize,
+				   Object2IntMap<EpisimContainer<?>> containerSize, Map<EpisimContainer<?>, Object2IntMap<String>> activityUsage) {
+
+		for (Map.Entry<EpisimContainer<?>, Partial> e : partials.entrySet()) {
+			EpisimContainer<?> container = e.getKey();
+			Partial p = e.getValue();
+
+			int start = groupSize.getInt(container);
+
+			// number of times a leaving person found an empty container, each of these increases the maximum group size by one
+			int clamped = p.minAfterLeave == Integer.MAX_VALUE ? 0 : Math.max(0, -(start + p.minAfterLeave));
+
+			groupSize.put(container, start + p.sum + clamped);
+
+			int max;
+			if (maxGroupSize.containsKey(container))
+				max = maxGroupSize.getInt(container);
+			else
+				max = clamped > 0 ? 0 : Integer.MIN_VALUE;
+
+			if (p.maxAfterEnter != Integer.MIN_VALUE)
+				max = Math.max(max, start + p.maxAfterEnter);
+
+			if (max != Integer.MIN_VALUE)
+				maxGroupSize.put(container, max + clamped);
+
+			if (p.starts > 0)
+				containerSize.mergeInt(container, p.starts, Integer::sum);
+
+			if (p.usage != null) {
+				Object2IntMap<String> usage = activityUsage.computeIfAbsent(container, k -> new Object2IntOpenHashMap<>());
+				for (Object2IntMap.Entry<String> u : p.usage.object2IntEntrySet()) {
+					usage.mergeInt(u.getKey(), u.getIntValue(), Integer::sum);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Statistics of one container.
+	 */
+	private static final class Partial {
+
+		/**
+		 * Sum of all group size changes.
+		 */
+		private int sum;
+
+		/**
+		 * Maximum of the changes after a person entered, and minimum after a person left.
+		 */
+		private int maxAfterEnter = Integer.MIN_VALUE;
+		private int minAfterLeave = Integer.MAX_VALUE;
+
+		private int starts;
+		private Object2IntMap<String> usage;
+	}
+}
@@ -0,0 +1,277 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.matsim.api.core.v01.events.Event;
+
+import java.util.*;
+
+/**
+ * Events of one day, stored as difference to the events of a base day, see {@link EpisimConfigGroup.EventStorage#delta}.
+ * <p>
+ * A person is <em>changed</em> if its events differ from the base day. All events of changed persons, and events without a person,
+ * are stored in the delta together with their position. The remaining positions are filled with the base events of unchanged persons.
+ * Persons are also marked as changed if their events would otherwise be reconstructed in a different order,
+ * so the reconstructed events are always exactly the original ones.
+ * <p>
+ * Random access is only efficient when the events are accessed in order.
+ */
+final class DeltaEventList extends AbstractList<Event> {
+
+	private final LeanEventList base;
+	private final LeanEventList delta;
+
+	/**
+	 * Position of each delta event.
+	 */
+	private final int[] positions;
+
+	/**
+	 * Changed persons by index of their id.
+	 */
+	private final BitSet changed;
+
+	private final int size;
+
+	/**
+	 * Cursor used for {@link #get(int)}.
+	 */
+	private Cursor cursor = new Cursor();
+
+	private DeltaEventList(LeanEventList base, LeanEventList delta, int[] positions, BitSet changed, int size) {
+		this.base = base;
+		this.delta = delta;
+		this.positions = positions;
+		this.changed = changed;
+		this.size = size;
+	}
+
+	/**
+	 * Encodes the events of {@code day} as difference to {@code base}.
+	 */
+	static DeltaEventList create(LeanEventList base, LeanEventList day) {
+
+		int n = 0;
+		for (int i = 0; i < base.size(); i++)
+			n = Math.max(n, base.getPersonIndex(i) + 1);
+		for (int i = 0; i < day.size(); i++)
+			n = Math.max(n, day.getPersonIndex(i) + 1);
+
+		int[] baseOffsets = new int[n + 1];
+		int[] baseOrder = groupByPerson(base, baseOffsets);
+		int[] dayOffsets = new int[n + 1];
+		int[] dayOrder = groupByPerson(day, dayOffsets);
+
+		BitSet changed = new BitSet(n);
+
+		// compare the events of each person
+		for (int p = 0; p < n; p++) {
+			int length = baseOffsets[p + 1] - baseOffsets[p];
+			if (length != dayOffsets[p + 1] - dayOffsets[p]) {
+				changed.set(p);
+				continue;
+			}
+
+			for (int i = 0; i < length; i++) {
+				if (!base.isSameEvent(baseOrder[baseOffsets[p] + i], day, dayOrder[dayOffsets[p] + i])) {
+					changed.set(p);
+					break;
+				}
+			}
+		}
+
+		// the remaining events must also have the same order, otherwise the persons are marked as changed
+		// removing all events of a person from both sequences keeps the already matched part identical
+		int b = 0;
+		int d = 0;
+		while (true) {
+			b = nextUnchanged(base, changed, b);
+			d = nextUnchanged(day, changed, d);
+
+			if (b == base.size() || d == day.size())
+				break;
+
+			if (base.isSameEvent(b, day, d)) {
+				b++;
+				d++;
+			} else {
+				changed.set(base.getPersonIndex(b));
+				changed.set(day.getPersonIndex(d));
+			}
+		}
+
+		for (; b < base.size(); b = nextUnchanged(base, changed, b + 1))
+			changed.set(base.getPersonIndex(b));
+
+		for (; d < day.size(); d = nextUnchanged(day, changed, d + 1))
+			changed.set(day.getPersonIndex(d));
+
+		LeanEventList delta = new LeanEventList(day.getNetwork());
+		IntArrayList positions = new IntArrayList();
+
+		for (int i = 0; i < day.size(); i++) {
+			if (isChanged(changed, day.getPersonIndex(i))) {
+				delta.add(day, i);
+				positions.add(i);
+			}
+		}
+
+		delta.trim();
+		return new DeltaEventList(base, delta, positions.toIntArray(), changed, day.size());
+	}
+
+	/**
+	 * Sorts the event indices by person and stores the start of each person in {@code offsets}. Events without person are omitted.
+	 */
+	private static int[] groupByPerson(LeanEventList list, int[] offsets) {
+
+		for (int i = 0; i < list.size(); i++) {
+			int p = list.getPersonIndex(i);
+			if (p != -1)
+				offsets[p + 1]++;
+		}
+
+		for (int p = 1; p < offsets.length; p++)
+			offsets[p] += offsets[p - 1];
+
+		int[] order = new int[offsets[offsets.length - 1]];
+		int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+
+		for (int i = 0; i < list.size(); i++) {
+			int p = list.getPersonIndex(i);
+			if (p != -1)
+				order[next[p]++] = i;
+		}
+
+		return order;
+	}
+
+	private static boolean isChanged(BitSet changed, int person) {
+		return person == -1 || changed.get(person);
+	}
+
+	private static int nextUnchanged(LeanEventList list, BitSet changed, int i) {
+		while (i < list.size() && isChanged(changed, list.getPersonIndex(i)))
+			i++;
+
+		return i;
+	}
+
+	/**
+	 * The base events.
+	 */
+	LeanEventList getBase() {
+		return base;
+	}
+
+	/**
+	 * Person id indices of persons whose events are not taken from the base.
+	 */
+	BitSet getChangedPersons() {
+		return changed;
+	}
+
+	/**
+	 * Number of events stored in the delta.
+	 */
+	int getDeltaSize() {
+		return positions.length;
+	}
+
+	/**
+	 * Whether the event at {@code index} is stored in the delta.
+	 */
+	boolean isDelta(int index) {
+		return Arrays.binarySearch(positions, index) >= 0;
+	}
+
+	@Override
+	public synchronized Event get(int index) {
+
+		Objects.checkIndex(index, size);
+
+		if (index < cursor.pos)
+			cursor = new Cursor();
+
+		while (cursor.pos < index)
+			cursor.skip();
+
+		return cursor.next();
+	}
+
+	@Override
+	public Iterator<Event> iterator() {
+		Cursor it = new Cursor();
+		return new Iterator<>() {
+			@Override
+			public boolean hasNext() {
+				return it.pos < size;
+			}
+
+			@Override
+			public Event next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+
+				return it.next();
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Iterates the merged events.
+	 */
+	private final class Cursor {
+
+		private int pos = 0;
+		private int base = 0;
+		private int delta = 0;
+
+		private Event next() {
+			Event e;
+			if (delta < positions.length && positions[delta] == pos) {
+				e = DeltaEventList.this.delta.get(delta++);
+			} else {
+				base = nextUnchanged(DeltaEventList.this.base, changed, base);
+				e = DeltaEventList.this.base.get(base++);
+			}
+
+			pos++;
+			return e;
+		}
+
+		private void skip() {
+			if (delta < positions.length && positions[delta] == pos) {
+				delta++;
+			} else {
+				base = nextUnchanged(DeltaEventList.this.base, changed, base) + 1;
+			}
+
+			pos++;
+		}
+	}
+}
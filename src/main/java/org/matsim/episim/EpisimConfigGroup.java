@@ -64,6 +64,13 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 	private static final String SNAPSHOT_INTERVAL = "snapshotInterval";
 	private static final String START_FROM_SNAPSHOT = "startFromSnapshot";
 	private static final String SNAPSHOT_SEED = "snapshotSeed";
+	private static final String CACHE_INPUT_EVENTS = "cacheInputEvents";
+	private static final String FILTER_INPUT_EVENTS = "filterInputEvents";
+	private static final String EVENT_STORAGE = "eventStorage";
+	private static final String PROGRESSION_THREADS = "progressionThreads";
+	private static final String CONTAINER_SKIPPING = "containerSkipping";
+	private static final String CONTACT_SAMPLING = "contactSampling";
+	private static final String CONTAINER_ORDER = "containerOrder";
 
 	private static final Logger log = LogManager.getLogger(EpisimConfigGroup.class);
 	private static final String GROUPNAME = "episim";
@@ -104,6 +111,34 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 	 * How the internal rng state should be handled.
 	 */
 	private SnapshotSeed snapshotSeed = SnapshotSeed.restore;
+	/**
+	 * Whether input events should be converted into a binary cache next to the input files.
+	 */
+	private boolean cacheInputEvents = false;
+	/**
+	 * Whether events not relevant for the simulation should be discarded while reading.
+	 */
+	private boolean filterInputEvents = false;
+	/**
+	 * How the input events are held in memory.
+	 */
+	private EventStorage eventStorage = EventStorage.lean;
+	/**
+	 * Number of threads for the disease progression, 0 for the sequential update.
+	 */
+	private int progressionThreads = 0;
+	/**
+	 * Whether contact models skip containers where nothing can happen.
+	 */
+	private ContainerSkipping containerSkipping = ContainerSkipping.disabled;
+	/**
+	 * How the symmetric contact model selects contacted persons.
+	 */
+	private ContactSampling contactSampling = ContactSampling.perPerson;
+	/**
+	 * Order of persons within containers.
+	 */
+	private ContainerOrder containerOrder = ContainerOrder.entering;
 
 	/**
 	 * Number of initial infections per day.
@@ -265,6 +300,107 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 		this.snapshotSeed = snapshotSeed;
 	}
 
+	/**
+	 * Whether the input event files are cached in binary format. The cache is stored next to the input file and
+	 * rebuilt automatically when the input changes. Remote inputs are never cached.
+	 */
+	@StringGetter(CACHE_INPUT_EVENTS)
+	public boolean getCacheInputEvents() {
+		return cacheInputEvents;
+	}
+
+	@StringSetter(CACHE_INPUT_EVENTS)
+	public void setCacheInputEvents(boolean cacheInputEvents) {
+		this.cacheInputEvents = cacheInputEvents;
+	}
+
+	/**
+	 * Whether only events used by the {@link InfectionEventHandler} are kept in memory. All other event types, as well as
+	 * events of pt drivers, drt and stage activities are discarded while reading the input. Has no effect when all
+	 * events are written.
+	 */
+	@StringGetter(FILTER_INPUT_EVENTS)
+	public boolean getFilterInputEvents() {
+		return filterInputEvents;
+	}
+
+	@StringSetter(FILTER_INPUT_EVENTS)
+	public void setFilterInputEvents(boolean filterInputEvents) {
+		this.filterInputEvents = filterInputEvents;
+	}
+
+	/**
+	 * How input events are stored in memory. When all events are written they are always stored as {@link EventStorage#full}.
+	 */
+	@StringGetter(EVENT_STORAGE)
+	public EventStorage getEventStorage() {
+		return eventStorage;
+	}
+
+	@StringSetter(EVENT_STORAGE)
+	public void setEventStorage(EventStorage eventStorage) {
+		this.eventStorage = eventStorage;
+	}
+
+	/**
+	 * Number of threads used for the disease progression at the start of each day. With 0 all persons are updated sequentially
+	 * using the shared random number generator. Otherwise each person draws from its own random stream and effects on other
+	 * persons, like tracing, are applied after all persons have been updated. The results are then the same for any number of threads.
+	 */
+	@StringGetter(PROGRESSION_THREADS)
+	public int getProgressionThreads() {
+		return progressionThreads;
+	}
+
+	@StringSetter(PROGRESSION_THREADS)
+	public void setProgressionThreads(int progressionThreads) {
+		if (progressionThreads < 0)
+			throw new IllegalArgumentException("Number of threads must not be negative");
+
+		this.progressionThreads = progressionThreads;
+	}
+
+	/**
+	 * Whether the contact models skip containers, in which no infection can happen and no contact is reported. This is only done
+	 * before tracing starts. See {@link ContainerSkipping} for the consumption of random numbers.
+	 */
+	@StringGetter(CONTAINER_SKIPPING)
+	public ContainerSkipping getContainerSkipping() {
+		return containerSkipping;
+	}
+
+	@StringSetter(CONTAINER_SKIPPING)
+	public void setContainerSkipping(ContainerSkipping containerSkipping) {
+		this.containerSkipping = containerSkipping;
+	}
+
+	/**
+	 * How contacted persons are selected by the {@link org.matsim.episim.model.SymmetricContactModel}.
+	 */
+	@StringGetter(CONTACT_SAMPLING)
+	public ContactSampling getContactSampling() {
+		return contactSampling;
+	}
+
+	@StringSetter(CONTACT_SAMPLING)
+	public void setContactSampling(ContactSampling contactSampling) {
+		this.contactSampling = contactSampling;
+	}
+
+	/**
+	 * Order in which persons are kept in their containers, which determines the persons selected by the random draws of the contact models.
+	 * See {@link ContainerOrder}.
+	 */
+	@StringGetter(CONTAINER_ORDER)
+	public ContainerOrder getContainerOrder() {
+		return containerOrder;
+	}
+
+	@StringSetter(CONTAINER_ORDER)
+	public void setContainerOrder(ContainerOrder containerOrder) {
+		this.containerOrder = containerOrder;
+	}
+
 	public long getStartOffset() {
 		return startOffset;
 	}
@@ -624,6 +760,81 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 		all
 	}
 
+	/**
+	 * Defines how the input events are stored in memory.
+	 */
+	public enum EventStorage {
+		/**
+		 * Keep the original MATSim events, including coordinates read from the input.
+		 */
+		full,
+		/**
+		 * Store activity and vehicle events as primitive columns, events are only created on access.
+		 * Coordinates are derived from the network when needed.
+		 */
+		lean,
+		/**
+		 * Like {@link #lean}, but only the input with the most days is stored completely. The events of other inputs are
+		 * stored as difference to it, containing only persons with different events.
+		 */
+		delta,
+		/**
+		 * Keep the events off-heap in the memory mapped {@link EventCache} file of each input, which is created if necessary.
+		 * Simulations running on the same machine share the mapped files through the page cache.
+		 * Inputs that can not be cached are stored as {@link #lean}. The events compiled for the replay of each day are also moved
+		 * into temporary memory mapped files, which belong to one simulation.
+		 */
+		mapped
+	}
+
+	/**
+	 * Defines whether containers without possible infections are skipped by the contact models.
+	 */
+	public enum ContainerSkipping {
+		/**
+		 * All containers are evaluated and draw random numbers as before, which reproduces the results of earlier runs.
+		 */
+		disabled,
+		/**
+		 * Containers in which nobody can be infected or traced are skipped without drawing random numbers. Runs are reproducible
+		 * with the same seed and setting, but have different random draws and thus different results than with {@link #disabled}.
+		 */
+		skipRandomDraws
+	}
+
+	/**
+	 * Defines how the symmetric contact model selects the persons a leaving person has contact with.
+	 * Every other person is contacted independently with the same probability in both cases.
+	 */
+	public enum ContactSampling {
+		/**
+		 * Draw one random number for every person in the container, which reproduces the results of earlier runs.
+		 */
+		perPerson,
+		/**
+		 * Draw the number of persons skipped until the next contact from a geometric distribution. The cost is proportional to the
+		 * number of contacts instead of the number of persons, but the random draws and thus the results differ from {@link #perPerson}.
+		 */
+		geometric
+	}
+
+	/**
+	 * Defines the order of persons within a container.
+	 */
+	public enum ContainerOrder {
+		/**
+		 * A leaving person is replaced by the person that entered last, so that entering and leaving take constant time.
+		 * The random draws select other persons than in earlier runs, thus results differ from {@link #entering}
+		 * and from the reference outputs of the integration tests.
+		 */
+		unordered,
+		/**
+		 * Persons stay in the order they entered, which reproduces the results of earlier runs. Leaving persons leave empty slots,
+		 * which are compacted once there are more empty than used slots. This is the default.
+		 */
+		entering
+	}
+
 	/**
 	 * Defines how the snapshot seed should be processed.
 	 */
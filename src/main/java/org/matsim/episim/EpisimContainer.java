@@ -20,26 +20,26 @@
  */
 package org.matsim.episim;
 
-import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
-import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
-import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
-import it.unimi.dsi.fastutil.ints.IntSet;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
-import org.matsim.core.gbl.Gbl;
 
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 import static org.matsim.episim.EpisimUtils.readChars;
 import static org.matsim.episim.EpisimUtils.writeChars;
 
 /**
  * Wrapper class for a specific location that keeps track of currently contained agents and entering times.
+ * <p>
+ * Persons are stored in a dense array, each person knows its slot in the array of its current container.
+ * By default persons are kept in the order they entered (see {@link EpisimConfigGroup.ContainerOrder#entering}). Removed persons leave
+ * an empty slot, which is compacted once there are more empty than used slots. Removing is then constant in amortized time and random access
+ * to {@link #getPersons()} skips the empty slots with a Fenwick tree over the used slots, without compacting.
+ * With {@link EpisimConfigGroup.ContainerOrder#unordered} a removed person is replaced by the last person instead, so that add and remove
+ * take constant time, but the order of persons changes.
  *
  * @param <T> the type where the agents are located in, e.g {@link org.matsim.vehicles.Vehicle} or {@link org.matsim.facilities.Facility}.
  */
@@ -47,16 +47,53 @@ public class EpisimContainer<T> {
 	private final Id<T> containerId;
 
 	/**
-	 * Persons currently in this container. Stored only as Ids.
+	 * Whether persons are kept in the order they entered.
 	 */
-	private final IntSet persons = new IntOpenHashSet(4);
+	private final boolean preserveOrder;
 
 	/**
-	 * Person list needed to draw random persons within container.
+	 * Persons currently in this container, in order of entering. Removed persons are null until compacted.
+	 */
+	private EpisimPerson[] persons = new EpisimPerson[4];
+
+	/**
+	 * Enter times in the same slots as {@link #persons}.
+	 */
+	private double[] containerEnterTimes = new double[4];
+
+	/**
+	 * Number of used slots, including removed persons. Equal to {@link #count} if the order is not preserved.
+	 */
+	private int end = 0;
+
+	/**
+	 * Number of persons in the container.
+	 */
+	private int count = 0;
+
+	/**
+	 * Fenwick tree counting the used slots, to map positions in {@link #getPersons()} to slots while there are empty slots.
+	 * Only built when needed and then updated on add and remove, until the slots change by compaction.
+	 */
+	private int[] ranks;
+	private boolean ranksValid = false;
+
+	/**
+	 * Last position and slot looked up by {@link #slotOf(int)}, so that consecutive positions can be found by skipping empty slots.
+	 * Position is -1 if not valid.
 	 */
-	private final List<EpisimPerson> personsAsList = new ArrayList<>();
+	private int lastPosition = -1;
+	private int lastSlot;
 
-	private final Int2DoubleMap containerEnterTimes = new Int2DoubleOpenHashMap(4);
+	/**
+	 * Number of persons in the container by ordinal of their {@link EpisimPerson.DiseaseStatus}.
+	 */
+	private final int[] statusCount = new int[EpisimPerson.DiseaseStatus.values().length];
+
+	/**
+	 * Person list needed to draw random persons within container.
+	 */
+	private final List<EpisimPerson> personsAsList = new PersonList();
 
 	/**
 	 * The maximum number of persons simultaneously in this container. Negative if unknown.
@@ -69,8 +106,23 @@ public class EpisimContainer<T> {
 	 */
 	private int size = -1;
 
+	/**
+	 * Infection params selected by the container id, resolved when first needed.
+	 */
+	private EpisimConfigGroup.InfectionParams infectionParams;
+
 	EpisimContainer(Id<T> containerId) {
+		this(containerId, true);
+	}
+
+	/**
+	 * Creates a container.
+	 *
+	 * @param preserveOrder whether persons are kept in the order they entered
+	 */
+	EpisimContainer(Id<T> containerId, boolean preserveOrder) {
 		this.containerId = containerId;
+		this.preserveOrder = preserveOrder;
 	}
 
 	/**
@@ -78,16 +130,12 @@ public class EpisimContainer<T> {
 	 */
 	void read(ObjectInput in, Map<Id<Person>, EpisimPerson> persons) throws IOException {
 
-		this.persons.clear();
-		this.personsAsList.clear();
-		this.containerEnterTimes.clear();
+		clearPersons();
 
 		int n = in.readInt();
 		for (int i = 0; i < n; i++) {
 			Id<Person> id = Id.create(readChars(in), Person.class);
-			this.persons.add(id.index());
-			personsAsList.add(persons.get(id));
-			containerEnterTimes.put(id.index(), in.readDouble());
+			append(persons.get(id), in.readDouble());
 		}
 	}
 
@@ -96,23 +144,44 @@ public class EpisimContainer<T> {
 	 */
 	void write(ObjectOutput out) throws IOException {
 
-		out.writeInt(containerEnterTimes.size());
-		for (EpisimPerson p : personsAsList) {
-			writeChars(out, p.getPersonId().toString());
-			out.writeDouble(containerEnterTimes.get(p.getPersonId().index()));
+		out.writeInt(count);
+		for (int i = 0; i < end; i++) {
+			if (persons[i] == null) continue;
+			writeChars(out, persons[i].getPersonId().toString());
+			out.writeDouble(containerEnterTimes[i]);
 		}
 	}
 
 	void addPerson(EpisimPerson person, double now) {
-		final int index = person.getPersonId().index();
 
-		if (persons.contains(index))
+		if (person.getCurrentContainer() == this)
 			throw new IllegalStateException("Person already contained in this container.");
 
-		persons.add(index);
-		personsAsList.add(person);
-		containerEnterTimes.put(index, now);
 		person.setCurrentContainer(this);
+		append(person, now);
+	}
+
+	private void append(EpisimPerson person, double now) {
+
+		if (end == persons.length) {
+			// compact instead of growing when there is enough space, a few empty slots would be compacted again soon
+			if (end - count >= end / 4)
+				compact();
+			else {
+				persons = Arrays.copyOf(persons, end * 2);
+				containerEnterTimes = Arrays.copyOf(containerEnterTimes, end * 2);
+				ranksValid = false;
+			}
+		}
+
+		persons[end] = person;
+		containerEnterTimes[end] = now;
+		person.setContainerSlot(end);
+		if (ranksValid)
+			updateRanks(end, 1);
+		end++;
+		count++;
+		statusCount[person.getDiseaseStatus().ordinal()]++;
 	}
 
 	/**
@@ -121,19 +190,136 @@ public class EpisimContainer<T> {
 	 * @throws RuntimeException if the person was not in the container.
 	 */
 	void removePerson(EpisimPerson person) {
-		int index = person.getPersonId().index();
+		int slot = person.getContainerSlot();
 
-		containerEnterTimes.remove(index);
-		persons.remove(index);
 		person.removeCurrentContainer(this);
-		boolean wasRemoved = personsAsList.remove(person);
-		Gbl.assertIf(wasRemoved);
+		count--;
+		statusCount[person.getDiseaseStatus().ordinal()]--;
+
+		if (!preserveOrder) {
+			// last person takes the free slot
+			end--;
+			if (slot != end) {
+				persons[slot] = persons[end];
+				containerEnterTimes[slot] = containerEnterTimes[end];
+				persons[slot].setContainerSlot(slot);
+			}
+			persons[end] = null;
+			return;
+		}
+
+		persons[slot] = null;
+		lastPosition = -1;
+
+		if (count == 0) {
+			end = 0;
+			ranksValid = false;
+		} else if (end - count > count)
+			compact();
+		else if (ranksValid)
+			updateRanks(slot, -1);
+	}
+
+	/**
+	 * Moves all persons to the front of the array, keeping their order.
+	 */
+	private void compact() {
+		int j = 0;
+		for (int i = 0; i < end; i++) {
+			if (persons[i] == null) continue;
+
+			persons[j] = persons[i];
+			containerEnterTimes[j] = containerEnterTimes[i];
+			persons[j].setContainerSlot(j);
+			j++;
+		}
+
+		Arrays.fill(persons, j, end, null);
+		end = j;
+		ranksValid = false;
+		lastPosition = -1;
+	}
+
+	/**
+	 * Slot of the person at {@code position} in {@link #getPersons()}.
+	 */
+	private int slotOf(int position) {
+		if (count == end)
+			return position;
+
+		int slot;
+		if (lastPosition != -1 && position >= lastPosition && position - lastPosition <= 8) {
+			// skipping forward is cheaper for consecutive positions, empty slots are at most half of the slots
+			slot = lastSlot;
+			for (int i = lastPosition; i < position; i++) {
+				do slot++;
+				while (persons[slot] == null);
+			}
+		} else {
+			buildRanks();
+
+			// largest slot with at most position used slots before it
+			slot = 0;
+			int remaining = position;
+			for (int step = Integer.highestOneBit(ranks.length - 1); step > 0; step >>= 1) {
+				int next = slot + step;
+				if (next < ranks.length && ranks[next] <= remaining) {
+					slot = next;
+					remaining -= ranks[next];
+				}
+			}
+		}
+
+		lastPosition = position;
+		lastSlot = slot;
+		return slot;
+	}
+
+	/**
+	 * Builds the Fenwick tree of used slots, if it is not valid.
+	 */
+	private void buildRanks() {
+		if (ranksValid)
+			return;
+
+		if (ranks == null || ranks.length < persons.length + 1)
+			ranks = new int[persons.length + 1];
+		else
+			Arrays.fill(ranks, 0);
+
+		for (int i = 1; i < ranks.length; i++) {
+			if (i <= end && persons[i - 1] != null)
+				ranks[i]++;
+
+			int parent = i + (i & -i);
+			if (parent < ranks.length)
+				ranks[parent] += ranks[i];
+		}
+
+		ranksValid = true;
+	}
+
+	private void updateRanks(int slot, int delta) {
+		for (int i = slot + 1; i < ranks.length; i += i & -i)
+			ranks[i] += delta;
 	}
 
 	public Id<T> getContainerId() {
 		return containerId;
 	}
 
+	/**
+	 * Returns the infection params selected by the id of this container, which are used for vehicles.
+	 *
+	 * @see EpisimConfigGroup#selectInfectionParams(String)
+	 */
+	public EpisimConfigGroup.InfectionParams getInfectionParams(EpisimConfigGroup config) {
+		if (infectionParams == null)
+			infectionParams = config.selectInfectionParams(containerId.toString());
+
+		return infectionParams;
+	}
+
 	public int getMaxGroupSize() {
 		return maxGroupSize;
 	}
@@ -160,20 +346,132 @@ public class EpisimContainer<T> {
 	}
 
 	void clearPersons() {
-		this.persons.clear();
-		this.personsAsList.clear();
-		this.containerEnterTimes.clear();
+		Arrays.fill(persons, 0, end, null);
+		Arrays.fill(statusCount, 0);
+		end = 0;
+		count = 0;
+		ranksValid = false;
+		lastPosition = -1;
+	}
+
+	/**
+	 * Updates the status counts when a person in this container changes its disease status.
+	 * Synchronized because the status may be set concurrently by the progression model, persons never enter or leave at the same time.
+	 */
+	synchronized void updateDiseaseStatus(EpisimPerson.DiseaseStatus from, EpisimPerson.DiseaseStatus to) {
+		statusCount[from.ordinal()]--;
+		statusCount[to.ordinal()]++;
+	}
+
+	/**
+	 * Number of persons currently in the container with a certain disease status.
+	 */
+	public int getNumberOfPersons(EpisimPerson.DiseaseStatus status) {
+		return statusCount[status.ordinal()];
 	}
 
 	/**
 	 * Returns the time the person entered the container, or {@link Double#NEGATIVE_INFINITY} if it never entered.
 	 */
+	public double getContainerEnteringTime(EpisimPerson person) {
+		if (person.getCurrentContainer() != this)
+			return Double.NEGATIVE_INFINITY;
+
+		return containerEnterTimes[person.getContainerSlot()];
+	}
+
+	/**
+	 * Returns the time the person entered the container, or {@link Double#NEGATIVE_INFINITY} if it never entered.
+	 * Prefer {@link #getContainerEnteringTime(EpisimPerson)}, which does not need to search the person.
+	 */
 	public double getContainerEnteringTime(Id<Person> personId) {
-		return containerEnterTimes.getOrDefault(personId.index(), Double.NEGATIVE_INFINITY);
+		for (int i = 0; i < end; i++) {
+			if (persons[i] != null && persons[i].getPersonId() == personId)
+				return containerEnterTimes[i];
+		}
+
+		return Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Returns the position of a person in {@link #getPersons()}, or -1 if it is not in this container.
+	 */
+	public int indexOf(EpisimPerson person) {
+		if (person.getCurrentContainer() != this)
+			return -1;
+
+		int slot = person.getContainerSlot();
+		if (count == end)
+			return slot;
+
+		// number of used slots before the person
+		buildRanks();
+		int position = 0;
+		for (int i = slot; i > 0; i -= i & -i)
+			position += ranks[i];
+
+		return position;
 	}
 
 	public List<EpisimPerson> getPersons() {
 		// Using Collections.unmodifiableList(...) puts huge pressure on the GC if its called hundred thousand times per second
 		return personsAsList;
 	}
+
+	/**
+	 * Read only list view of the persons. Random access skips empty slots without modifying the array.
+	 */
+	private final class PersonList extends AbstractList<EpisimPerson> implements RandomAccess {
+
+		@Override
+		public EpisimPerson get(int index) {
+			Objects.checkIndex(index, count);
+			return persons[slotOf(index)];
+		}
+
+		@Override
+		public int size() {
+			return count;
+		}
+
+		@Override
+		public Iterator<EpisimPerson> iterator() {
+			return new Iterator<>() {
+
+				private int i = next(0);
+
+				private int next(int from) {
+					while (from < end && persons[from] == null)
+						from++;
+					return from;
+				}
+
+				@Override
+				public boolean hasNext() {
+					return i < end;
+				}
+
+				@Override
+				public EpisimPerson next() {
+					if (!hasNext())
+						throw new NoSuchElementException();
+
+					EpisimPerson p = persons[i];
+					i = next(i + 1);
+					return p;
+				}
+			};
+		}
+
+		@Override
+		public Object[] toArray() {
+			Object[] array = new Object[count];
+			int j = 0;
+			for (int i = 0; i < end; i++) {
+				if (persons[i] != null)
+					array[j++] = persons[i];
+			}
+			return array;
+		}
+	}
 }
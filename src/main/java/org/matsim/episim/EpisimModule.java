@@ -29,7 +29,6 @@ import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.config.groups.VspExperimentalConfigGroup;
 import org.matsim.core.events.EventsUtils;
-import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.episim.model.*;
 import org.matsim.episim.reporting.AsyncEpisimWriter;
 import org.matsim.episim.reporting.EpisimWriter;
@@ -77,7 +76,7 @@ public class EpisimModule extends AbstractModule {
 		config.facilities().setInputFile(null);
 		config.vehicles().setVehiclesFile(null);
 
-		return ScenarioUtils.loadScenario(config);
+		return PopulationCache.loadScenario(config);
 	}
 
 	@Provides
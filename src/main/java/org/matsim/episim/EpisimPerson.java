@@ -27,6 +27,7 @@ import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.episim.events.EpisimPersonStatusEvent;
+import org.matsim.episim.model.InfectionModelWithViralLoad;
 import org.matsim.facilities.ActivityFacility;
 import org.matsim.utils.objectattributes.attributable.Attributable;
 import org.matsim.utils.objectattributes.attributable.Attributes;
@@ -36,10 +37,7 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.time.DayOfWeek;
-import java.util.ArrayList;
-import java.util.EnumMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.stream.Collectors;
 
 import static org.matsim.episim.EpisimUtils.readChars;
@@ -47,28 +45,25 @@ import static org.matsim.episim.EpisimUtils.writeChars;
 
 /**
  * Persons current state in the simulation.
+ * <p>
+ * The primitive state is held in the columns of an {@link EpisimPersonStore}, this class is a view on one of its slots.
  */
 public final class EpisimPerson implements Attributable {
 
+	private static final DiseaseStatus[] DISEASE_STATUS = DiseaseStatus.values();
+	private static final QuarantineStatus[] QUARANTINE_STATUS = QuarantineStatus.values();
+
 	private final Id<Person> personId;
+	private final EpisimPersonStore store;
+	private final int slot;
 	private final EpisimReporting reporting;
 	// This data structure is quite slow: log n costs, which should be constant...
 	private final Attributes attributes;
 
 	/**
-	 * Whole trajectory over all days of the week.
-	 */
-	private final List<Activity> trajectory = new ArrayList<>();
-
-	/**
-	 * The position in the trajectory at the start for each day of the week.
+	 * Whole trajectory over all days of the week, while it is built. Afterwards it is stored in the {@link TrajectoryPool}.
 	 */
-	private final int[] startOfDay = new int[7];
-
-	/**
-	 * The position in the trajectory for the end of the day.
-	 */
-	private final int[] endOfDay = new int[7];
+	private List<Activity> trajectory = new ArrayList<>();
 
 	/**
 	 * The first visited {@link org.matsim.facilities.ActivityFacility} for each day.
@@ -78,59 +73,38 @@ public final class EpisimPerson implements Attributable {
 	// Fields above are initialized from the sim and not persisted
 
 	/**
-	 * Traced contacts with other persons.
+	 * Traced contacts with other persons, only created when needed.
 	 */
-	private final Object2DoubleMap<EpisimPerson> traceableContactPersons = new Object2DoubleLinkedOpenHashMap<>(4);
-
-	/**
-	 * Stores first time of status changes to specific type.
-	 */
-	private final EnumMap<DiseaseStatus, Double> statusChanges = new EnumMap<>(DiseaseStatus.class);
+	private Object2DoubleMap<EpisimPerson> traceableContactPersons = null;
 
 	/**
 	 * Total spent time during activities.
 	 */
 	private final Object2DoubleMap<String> spentTime = new Object2DoubleOpenHashMap<>(4);
 
-	/**
-	 * The {@link EpisimContainer} the person is currently located in.
-	 */
-	private EpisimContainer<?> currentContainer = null;
-
 	/**
 	 * The facility where the person got infected, null otherwise.
 	 */
 	private Id<ActivityFacility> infectionContainer = null;
 
-	/**
-	 * Current {@link DiseaseStatus}.
-	 */
-	private DiseaseStatus status = DiseaseStatus.susceptible;
-	/**
-	 * Current {@link QuarantineStatus}.
-	 */
-	private QuarantineStatus quarantineStatus = QuarantineStatus.no;
-
-	/**
-	 * Iteration when this person got into quarantine. Negative if person was never quarantined.
-	 */
-	private int quarantineDate = -1;
-	private int currentPositionInTrajectory;
-
-	/**
-	 * Whether this person can be traced.
-	 */
-	private boolean traceable;
-
 	EpisimPerson(Id<Person> personId, Attributes attrs, EpisimReporting reporting) {
 		this(personId, attrs, true, reporting);
 	}
 
 	EpisimPerson(Id<Person> personId, Attributes attrs, boolean traceable, EpisimReporting reporting) {
+		this(personId, attrs, traceable, reporting, new EpisimPersonStore(1), 0);
+	}
+
+	/**
+	 * Creates a person, whose state is stored in {@code slot} of the {@code store}.
+	 */
+	EpisimPerson(Id<Person> personId, Attributes attrs, boolean traceable, EpisimReporting reporting, EpisimPersonStore store, int slot) {
 		this.personId = personId;
 		this.attributes = attrs;
-		this.traceable = traceable;
 		this.reporting = reporting;
+		this.store = store;
+		this.slot = slot;
+		store.init(slot, traceable);
 	}
 
 	/**
@@ -143,32 +117,37 @@ public final class EpisimPerson implements Attributable {
 			  Map<Id<Vehicle>, InfectionEventHandler.EpisimVehicle> vehicles) throws IOException {
 
 		int n = in.readInt();
-		traceableContactPersons.clear();
+		traceableContactPersons = null;
 		for (int i = 0; i < n; i++) {
 			Id<Person> id = Id.create(readChars(in), Person.class);
-			traceableContactPersons.put(persons.get(id), in.readDouble());
+			getTraceableContacts().put(persons.get(id), in.readDouble());
 		}
 
 		n = in.readInt();
-		statusChanges.clear();
+		for (DiseaseStatus status : DiseaseStatus.values()) {
+			store.statusChanges[EpisimPersonStore.statusIndex(slot, status)] = Double.NaN;
+		}
 		for (int i = 0; i < n; i++) {
 			int status = in.readInt();
-			statusChanges.put(DiseaseStatus.values()[status], in.readDouble());
+			store.statusChanges[EpisimPersonStore.statusIndex(slot, DiseaseStatus.values()[status])] = in.readDouble();
 		}
 
 		// Current container is set
 		if (in.readBoolean()) {
 			boolean isVehicle = in.readBoolean();
 			String name = readChars(in);
+			EpisimContainer<?> container;
 			if (isVehicle) {
-				currentContainer = vehicles.get(Id.create(name, Vehicle.class));
+				container = vehicles.get(Id.create(name, Vehicle.class));
 			} else
-				currentContainer = facilities.get(Id.create(name, ActivityFacility.class));
+				container = facilities.get(Id.create(name, ActivityFacility.class));
 
-			if (currentContainer == null)
+			if (container == null)
 				throw new IllegalStateException("Could not reconstruct container: " + name);
+
+			store.currentContainer[slot] = container;
 		} else
-			currentContainer = null;
+			store.currentContainer[slot] = null;
 
 		if (in.readBoolean()){
 			infectionContainer = Id.create(readChars(in), ActivityFacility.class);
@@ -181,11 +160,11 @@ public final class EpisimPerson implements Attributable {
 			spentTime.put(act, in.readDouble());
 		}
 
-		status = DiseaseStatus.values()[in.readInt()];
-		quarantineStatus = QuarantineStatus.values()[in.readInt()];
-		quarantineDate = in.readInt();
-		currentPositionInTrajectory = in.readInt();
-		traceable = in.readBoolean();
+		store.status[slot] = (byte) in.readInt();
+		store.quarantineStatus[slot] = (byte) in.readInt();
+		store.quarantineDate[slot] = in.readInt();
+		store.currentPositionInTrajectory[slot] = in.readInt();
+		store.traceable[slot] = in.readBoolean();
 	}
 
 	/**
@@ -193,18 +172,31 @@ public final class EpisimPerson implements Attributable {
 	 */
 	void write(ObjectOutput out) throws IOException {
 
-		out.writeInt(traceableContactPersons.size());
-		for (Map.Entry<EpisimPerson, Double> kv : traceableContactPersons.entrySet()) {
-			writeChars(out, kv.getKey().getPersonId().toString());
-			out.writeDouble(kv.getValue());
+		// the contact map is allocated lazily, persons without contacts are written without creating it
+		if (traceableContactPersons == null) {
+			out.writeInt(0);
+		} else {
+			out.writeInt(traceableContactPersons.size());
+			for (Object2DoubleMap.Entry<EpisimPerson> kv : traceableContactPersons.object2DoubleEntrySet()) {
+				writeChars(out, kv.getKey().getPersonId().toString());
+				out.writeDouble(kv.getDoubleValue());
+			}
 		}
 
-		out.writeInt(statusChanges.size());
-		for (Map.Entry<DiseaseStatus, Double> e : statusChanges.entrySet()) {
-			out.writeInt(e.getKey().ordinal());
-			out.writeDouble(e.getValue());
+		int n = 0;
+		for (DiseaseStatus status : DiseaseStatus.values()) {
+			if (hadDiseaseStatus(status)) n++;
 		}
 
+		out.writeInt(n);
+		for (DiseaseStatus status : DiseaseStatus.values()) {
+			if (hadDiseaseStatus(status)) {
+				out.writeInt(status.ordinal());
+				out.writeDouble(store.statusChanges[EpisimPersonStore.statusIndex(slot, status)]);
+			}
+		}
+
+		EpisimContainer<?> currentContainer = getCurrentContainer();
 		out.writeBoolean(currentContainer != null);
 		if (currentContainer != null) {
 			out.writeBoolean(currentContainer instanceof InfectionEventHandler.EpisimVehicle);
@@ -223,11 +215,11 @@ public final class EpisimPerson implements Attributable {
 			out.writeDouble(kv.getDoubleValue());
 		}
 
-		out.writeInt(status.ordinal());
-		out.writeInt(quarantineStatus.ordinal());
-		out.writeInt(quarantineDate);
-		out.writeInt(currentPositionInTrajectory);
-		out.writeBoolean(traceable);
+		out.writeInt(store.status[slot]);
+		out.writeInt(store.quarantineStatus[slot]);
+		out.writeInt(store.quarantineDate[slot]);
+		out.writeInt(store.currentPositionInTrajectory[slot]);
+		out.writeBoolean(store.traceable[slot]);
 	}
 
 	public Id<Person> getPersonId() {
@@ -235,24 +227,52 @@ public final class EpisimPerson implements Attributable {
 	}
 
 	public DiseaseStatus getDiseaseStatus() {
-		return status;
+		return DISEASE_STATUS[store.status[slot]];
 	}
 
 	public void setDiseaseStatus(double now, DiseaseStatus status) {
-		this.status = status;
-		if (!statusChanges.containsKey(status))
-			statusChanges.put(status, now);
+		setDiseaseStatus(now, status, true);
+	}
+
+	/**
+	 * Sets the disease status, which is only reported if {@code report} is true.
+	 * Otherwise {@link #reportDiseaseStatus(double, DiseaseStatus)} has to be called later, which allows to set the status concurrently.
+	 */
+	public void setDiseaseStatus(double now, DiseaseStatus status, boolean report) {
+		if (store.susceptibleIndex != null)
+			store.susceptibleIndex.update(slot, status == DiseaseStatus.susceptible);
+		if (store.reportCounters != null)
+			store.reportCounters.updateDiseaseStatus(slot, getDiseaseStatus(), status);
+		if (store.currentContainer[slot] != null)
+			store.currentContainer[slot].updateDiseaseStatus(getDiseaseStatus(), status);
 
+		store.status[slot] = (byte) status.ordinal();
+		store.statusChanged[slot] = true;
+		if (!hadDiseaseStatus(status))
+			store.statusChanges[EpisimPersonStore.statusIndex(slot, status)] = now;
+
+		if (report)
+			reportDiseaseStatus(now, status);
+	}
+
+	/**
+	 * Reports a status change that has been set before.
+	 */
+	public void reportDiseaseStatus(double now, DiseaseStatus status) {
 		reporting.reportPersonStatus(this, new EpisimPersonStatusEvent(now, personId, status));
 	}
 
 	public QuarantineStatus getQuarantineStatus() {
-		return quarantineStatus;
+		return QUARANTINE_STATUS[store.quarantineStatus[slot]];
 	}
 
 	public void setQuarantineStatus(QuarantineStatus quarantineStatus, int iteration) {
-		this.quarantineStatus = quarantineStatus;
-		this.quarantineDate = iteration;
+		if (store.reportCounters != null)
+			store.reportCounters.updateQuarantineStatus(slot, getQuarantineStatus(), quarantineStatus);
+
+		store.quarantineStatus[slot] = (byte) quarantineStatus.ordinal();
+		store.quarantineDate[slot] = iteration;
+		store.statusChanged[slot] = true;
 
 		// this function should receive now instead of iteration
 		// only for testing currently
@@ -269,9 +289,9 @@ public final class EpisimPerson implements Attributable {
 	 * @throws IllegalStateException when the requested status was never set
 	 */
 	public int daysSince(DiseaseStatus status, int currentDay) {
-		if (!statusChanges.containsKey(status)) throw new IllegalStateException("Person was never " + status);
+		if (!hadDiseaseStatus(status)) throw new IllegalStateException("Person was never " + status);
 
-		double day = Math.floor(statusChanges.get(status) / 86400d);
+		double day = Math.floor(store.statusChanges[EpisimPersonStore.statusIndex(slot, status)] / 86400d);
 
 		return currentDay - (int) day;
 	}
@@ -280,7 +300,7 @@ public final class EpisimPerson implements Attributable {
 	 * Return whether a person had (or currently has) a certain disease status.
 	 */
 	public boolean hadDiseaseStatus(DiseaseStatus status) {
-		return statusChanges.containsKey(status);
+		return !Double.isNaN(store.statusChanges[EpisimPersonStore.statusIndex(slot, status)]);
 	}
 
 	/**
@@ -294,20 +314,21 @@ public final class EpisimPerson implements Attributable {
 
 		// yyyy since this API is so unstable, I would prefer to have the class non-public.  kai, apr'20
 		// -> api now marked as unstable and containing an api note, because it is used by the models it has to be public. chr, apr'20
+		int quarantineDate = getQuarantineDate();
 		if (quarantineDate < 0) throw new IllegalStateException("Person was never quarantined");
 
 		return currentDay - quarantineDate;
 	}
 
 	int getQuarantineDate() {
-		return this.quarantineDate;
+		return store.quarantineDate[slot];
 	}
 
 	public void addTraceableContactPerson(EpisimPerson personWrapper, double now) {
 		// check if both persons have tracing capability
 		if (isTraceable() && personWrapper.isTraceable()) {
 			// Always use the latest tracking date
-			traceableContactPersons.put(personWrapper, now);
+			getTraceableContacts().put(personWrapper, now);
 			reporting.reportTracing(now, this, personWrapper);
 		}
 	}
@@ -316,6 +337,9 @@ public final class EpisimPerson implements Attributable {
 	 * Get all traced contacts that happened after certain time.
 	 */
 	public List<EpisimPerson> getTraceableContactPersons(double after) {
+		if (traceableContactPersons == null)
+			return new ArrayList<>();
+
 		return traceableContactPersons.object2DoubleEntrySet()
 				.stream().filter(p -> p.getDoubleValue() >= after)
 				.map(Map.Entry::getKey)
@@ -331,9 +355,7 @@ public final class EpisimPerson implements Attributable {
 	 */
 	public void clearTraceableContractPersons(double before) {
 
-		int oldSize = traceableContactPersons.size();
-
-		if (oldSize == 0) return;
+		if (traceableContactPersons == null || traceableContactPersons.isEmpty()) return;
 
 		traceableContactPersons.keySet().removeIf(k -> traceableContactPersons.get(k) < before);
 	}
@@ -342,60 +364,116 @@ public final class EpisimPerson implements Attributable {
 	 * Returns whether the person can be traced.
 	 */
 	public boolean isTraceable() {
-		return traceable;
+		return store.traceable[slot];
 	}
 
 	public void setTraceable(boolean traceable) {
-		this.traceable = traceable;
+		store.traceable[slot] = traceable;
+	}
+
+	private Object2DoubleMap<EpisimPerson> getTraceableContacts() {
+		if (traceableContactPersons == null)
+			traceableContactPersons = new Object2DoubleLinkedOpenHashMap<>(4);
+
+		return traceableContactPersons;
 	}
 
 	void addToTrajectory(Activity trajectoryElement) {
+		if (trajectory == null)
+			trajectory = new ArrayList<>(getTrajectory());
+
 		trajectory.add(trajectoryElement);
 	}
 
+	/**
+	 * Moves the trajectory into the shared pool of the store. It can still be extended afterwards, but this will create a copy again.
+	 */
+	void sealTrajectory() {
+		if (trajectory == null)
+			return;
+
+		store.trajectoryOffset[slot] = store.trajectories.add(trajectory);
+		store.trajectoryLength[slot] = trajectory.size();
+		trajectory = null;
+	}
+
+	/**
+	 * Whole trajectory over all days of the week. The returned list is read-only once the trajectory was sealed.
+	 */
 	public List<Activity> getTrajectory() {
-		return trajectory;
+		if (trajectory != null)
+			return trajectory;
+
+		return new AbstractList<>() {
+			@Override
+			public Activity get(int index) {
+				return getTrajectoryElement(index);
+			}
+
+			@Override
+			public int size() {
+				return getTrajectorySize();
+			}
+		};
+	}
+
+	/**
+	 * Activity at {@code position} of the trajectory.
+	 */
+	public Activity getTrajectoryElement(int position) {
+		if (trajectory != null)
+			return trajectory.get(position);
+
+		Objects.checkIndex(position, store.trajectoryLength[slot]);
+		return store.trajectories.get(store.trajectoryOffset[slot], position);
+	}
+
+	/**
+	 * Length of the whole trajectory.
+	 */
+	public int getTrajectorySize() {
+		return trajectory != null ? trajectory.size() : store.trajectoryLength[slot];
 	}
 
 	public int getCurrentPositionInTrajectory() {
-		return this.currentPositionInTrajectory;
+		return store.currentPositionInTrajectory[slot];
 	}
 
 	void incrementCurrentPositionInTrajectory() {
-		this.currentPositionInTrajectory++;
+		store.currentPositionInTrajectory[slot]++;
 	}
 
 	void resetCurrentPositionInTrajectory(DayOfWeek day) {
-		currentPositionInTrajectory = startOfDay[day.getValue() - 1];
+		store.currentPositionInTrajectory[slot] = getStartOfDay(day);
 	}
 
 	void setStartOfDay(DayOfWeek day, int position) {
-		startOfDay[day.getValue() - 1] = position;
+		store.startOfDay[EpisimPersonStore.dayIndex(slot, day.getValue())] = position;
 	}
 
 	int getStartOfDay(DayOfWeek day) {
-		return startOfDay[day.getValue() - 1];
+		return store.startOfDay[EpisimPersonStore.dayIndex(slot, day.getValue())];
 	}
 
 	void setEndOfDay(DayOfWeek day, int position) {
-		endOfDay[day.getValue() - 1] = position;
+		store.endOfDay[EpisimPersonStore.dayIndex(slot, day.getValue())] = position;
 	}
 
 	int getEndOfDay(DayOfWeek day) {
-		return endOfDay[day.getValue() - 1];
+		return store.endOfDay[EpisimPersonStore.dayIndex(slot, day.getValue())];
 	}
 
 	/**
 	 * Defines that day {@code target} has the same trajectory as {@code source}.
 	 */
 	void duplicateDay(DayOfWeek target, DayOfWeek source) {
-		startOfDay[target.getValue() - 1] = startOfDay[source.getValue() - 1];
-		endOfDay[target.getValue() - 1] = endOfDay[source.getValue() - 1];
+		setStartOfDay(target, getStartOfDay(source));
+		setEndOfDay(target, getEndOfDay(source));
 		firstFacilityId[target.getValue() - 1] = firstFacilityId[source.getValue() - 1];
 	}
 
 	public EpisimContainer<?> getCurrentContainer() {
-		return currentContainer;
+		return store.currentContainer[slot];
 	}
 
 	/**
@@ -403,12 +481,13 @@ public final class EpisimPerson implements Attributable {
 	 * container can be set.
 	 */
 	public void setCurrentContainer(EpisimContainer<?> container) {
-		if (this.currentContainer != null)
+		EpisimContainer<?> currentContainer = getCurrentContainer();
+		if (currentContainer != null)
 			throw new IllegalStateException(String.format("Person in more than one container at once. Person=%s in %s and %s",
-					this.getPersonId(), container.getContainerId(), this.currentContainer.getContainerId()));
+					this.getPersonId(), container.getContainerId(), currentContainer.getContainerId()));
 
 
-		this.currentContainer = container;
+		store.currentContainer[slot] = container;
 	}
 
 	@Override
@@ -416,18 +495,121 @@ public final class EpisimPerson implements Attributable {
 		return attributes;
 	}
 
+	/**
+	 * Copies frequently used attributes into the store, so that the typed accessors below don't need to look them up.
+	 */
+	void cacheAttributes() {
+		store.cacheAttributes(slot, attributes);
+	}
+
+	/**
+	 * Age of the person, taken from the first attribute containing "age". -1 if not present.
+	 *
+	 * @throws IllegalStateException if this attribute is not a number
+	 */
+	public int getAge() {
+		int age = store.attributesCached[slot] ? store.age[slot] : EpisimPersonStore.readAge(attributes);
+		if (age == EpisimPersonStore.INVALID_AGE)
+			throw new IllegalStateException("Age attribute of person " + personId + " is not a number");
+
+		return age;
+	}
+
+	/**
+	 * Susceptibility factor of this person.
+	 *
+	 * @throws IllegalStateException if the attribute is not present
+	 */
+	public double getSusceptibility() {
+		double value = store.attributesCached[slot] ? store.susceptibility[slot] :
+				EpisimPersonStore.readFactor(attributes, InfectionModelWithViralLoad.SUSCEPTIBILITY);
+		return checkFactor(value, InfectionModelWithViralLoad.SUSCEPTIBILITY);
+	}
+
+	/**
+	 * Viral load factor of this person.
+	 *
+	 * @throws IllegalStateException if the attribute is not present
+	 */
+	public double getViralLoad() {
+		double value = store.attributesCached[slot] ? store.viralLoad[slot] :
+				EpisimPersonStore.readFactor(attributes, InfectionModelWithViralLoad.VIRAL_LOAD);
+		return checkFactor(value, InfectionModelWithViralLoad.VIRAL_LOAD);
+	}
+
+	private double checkFactor(double value, String attribute) {
+		if (Double.isNaN(value))
+			throw new IllegalStateException("Person " + personId + " has no numeric attribute " + attribute);
+
+		return value;
+	}
+
+	/**
+	 * Home id of this person or null.
+	 */
+	public String getHomeId() {
+		return store.attributesCached[slot] ? store.getName(store.homeId[slot]) : (String) attributes.getAttribute("homeId");
+	}
+
+	/**
+	 * Whether both persons have the same home id. Always false if there is no home id.
+	 */
+	public boolean isSameHome(EpisimPerson other) {
+		if (store == other.store && store.attributesCached[slot] && store.attributesCached[other.slot])
+			return store.homeId[slot] != -1 && store.homeId[slot] == store.homeId[other.slot];
+
+		String homeId = getHomeId();
+		return homeId != null && homeId.equals(other.getHomeId());
+	}
+
+	/**
+	 * District of this person or null.
+	 */
+	public String getDistrict() {
+		return store.attributesCached[slot] ? store.getName(store.district[slot]) : (String) attributes.getAttribute("district");
+	}
+
+	/**
+	 * Whether disease or quarantine status changed since {@link #clearStatusChanged()} was called.
+	 */
+	boolean isStatusChanged() {
+		return store.statusChanged[slot];
+	}
+
+	void clearStatusChanged() {
+		store.statusChanged[slot] = false;
+	}
+
+	/**
+	 * Slot of this person in the {@link EpisimPersonStore}.
+	 */
+	int getSlot() {
+		return slot;
+	}
+
+	/**
+	 * Slot of this person in its current container.
+	 */
+	int getContainerSlot() {
+		return store.containerSlot[slot];
+	}
+
+	void setContainerSlot(int containerSlot) {
+		store.containerSlot[slot] = containerSlot;
+	}
+
 	/**
 	 * Whether person is currently in a container.
 	 */
 	public boolean isInContainer() {
-		return currentContainer != null;
+		return getCurrentContainer() != null;
 	}
 
 	public void removeCurrentContainer(EpisimContainer<?> container) {
-		if (this.currentContainer != container)
-			throw new IllegalStateException(String.format("Person is currently in %s, but not in removed one %s", currentContainer, container));
+		if (getCurrentContainer() != container)
+			throw new IllegalStateException(String.format("Person is currently in %s, but not in removed one %s", getCurrentContainer(), container));
 
-		this.currentContainer = null;
+		store.currentContainer[slot] = null;
 	}
 
 	Id<ActivityFacility> getFirstFacilityId(DayOfWeek day) {
@@ -0,0 +1,287 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.matsim.episim.model.InfectionModelWithViralLoad;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the state of all {@link EpisimPerson}s in primitive columns. Each person is a view on one slot of this store,
+ * which is the index of its person id when created by the {@link InfectionEventHandler}.
+ * <p>
+ * Columns are accessed directly by {@link EpisimPerson}, all other classes should only use the person.
+ */
+final class EpisimPersonStore {
+
+	private static final int DAYS = 7;
+	private static final int STATUS = EpisimPerson.DiseaseStatus.values().length;
+
+	/**
+	 * Ordinal of {@link EpisimPerson.DiseaseStatus}.
+	 */
+	byte[] status;
+
+	/**
+	 * Ordinal of {@link EpisimPerson.QuarantineStatus}.
+	 */
+	byte[] quarantineStatus;
+	int[] quarantineDate;
+
+	/**
+	 * First time of status changes, {@link #STATUS} entries per person. NaN if status was never set.
+	 */
+	double[] statusChanges;
+
+	EpisimContainer<?>[] currentContainer;
+
+	/**
+	 * Slot of the person within its current container.
+	 */
+	int[] containerSlot;
+	int[] currentPositionInTrajectory;
+
+	/**
+	 * Start and end of trajectory positions, seven entries per person.
+	 */
+	int[] startOfDay;
+	int[] endOfDay;
+
+	boolean[] traceable;
+
+	/**
+	 * Whether disease or quarantine status changed since the last progression update of a person.
+	 */
+	boolean[] statusChanged;
+
+	/**
+	 * Offset and length of sealed trajectories in {@link #trajectories}, offset is -1 while the trajectory is built.
+	 */
+	int[] trajectoryOffset;
+	int[] trajectoryLength;
+
+	/**
+	 * Trajectories of all persons in this store.
+	 */
+	final TrajectoryPool trajectories = new TrajectoryPool();
+
+	/**
+	 * Index of susceptible persons, only present while it is needed.
+	 */
+	SusceptibleIndex susceptibleIndex;
+
+	/**
+	 * Counters for the daily infection report, only present when used by the {@link InfectionEventHandler}.
+	 */
+	InfectionReportCounters reportCounters;
+
+	/**
+	 * Whether the attribute columns below have been filled for a person.
+	 */
+	boolean[] attributesCached;
+
+	/**
+	 * Frequently used person attributes, see {@link #cacheAttributes(int, Attributes)}.
+	 */
+	int[] age;
+	double[] susceptibility;
+	double[] viralLoad;
+
+	/**
+	 * Stored age if the age attribute is not a number.
+	 */
+	static final int INVALID_AGE = Integer.MIN_VALUE;
+
+	/**
+	 * Index of home id and district in {@link #names}, -1 if not present.
+	 */
+	int[] homeId;
+	int[] district;
+
+	/**
+	 * Distinct string attribute values.
+	 */
+	private final List<String> names = new ArrayList<>();
+	private final Object2IntMap<String> nameIndex = new Object2IntOpenHashMap<>();
+
+	private int capacity = 0;
+
+	/**
+	 * Creates a store with initial capacity.
+	 */
+	EpisimPersonStore(int capacity) {
+		nameIndex.defaultReturnValue(-1);
+		resize(Math.max(1, capacity));
+	}
+
+	/**
+	 * Initializes the state of a new person, the store is enlarged if needed.
+	 */
+	void init(int slot, boolean traceable) {
+
+		if (slot >= capacity)
+			resize(Math.max(slot + 1, capacity + (capacity >> 1)));
+
+		status[slot] = (byte) EpisimPerson.DiseaseStatus.susceptible.ordinal();
+		quarantineStatus[slot] = (byte) EpisimPerson.QuarantineStatus.no.ordinal();
+		quarantineDate[slot] = -1;
+		Arrays.fill(statusChanges, slot * STATUS, (slot + 1) * STATUS, Double.NaN);
+		currentContainer[slot] = null;
+		containerSlot[slot] = -1;
+		currentPositionInTrajectory[slot] = 0;
+		Arrays.fill(startOfDay, slot * DAYS, (slot + 1) * DAYS, 0);
+		Arrays.fill(endOfDay, slot * DAYS, (slot + 1) * DAYS, 0);
+		this.traceable[slot] = traceable;
+		statusChanged[slot] = false;
+		trajectoryOffset[slot] = -1;
+		trajectoryLength[slot] = 0;
+		attributesCached[slot] = false;
+	}
+
+	/**
+	 * Copies the frequently used attributes of a person into the primitive columns.
+	 * Attributes changed afterwards will not be reflected in the columns.
+	 */
+	void cacheAttributes(int slot, Attributes attrs) {
+		age[slot] = readAge(attrs);
+		susceptibility[slot] = readFactor(attrs, InfectionModelWithViralLoad.SUSCEPTIBILITY);
+		viralLoad[slot] = readFactor(attrs, InfectionModelWithViralLoad.VIRAL_LOAD);
+		homeId[slot] = intern((String) attrs.getAttribute("homeId"));
+		district[slot] = intern((String) attrs.getAttribute("district"));
+		attributesCached[slot] = true;
+	}
+
+	/**
+	 * Value of the first attribute containing "age", -1 if there is none and {@link #INVALID_AGE} if it is not a number.
+	 * This is read for every person, thus invalid values only fail when the age is used, see {@link EpisimPerson#getAge()}.
+	 */
+	static int readAge(Attributes attrs) {
+		for (Map.Entry<String, Object> attr : attrs.getAsMap().entrySet()) {
+			if (attr.getKey().contains("age"))
+				return attr.getValue() instanceof Number ? ((Number) attr.getValue()).intValue() : INVALID_AGE;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Numeric attribute, NaN if not present or not a number.
+	 */
+	static double readFactor(Attributes attrs, String key) {
+		Object value = attrs.getAttribute(key);
+		return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+	}
+
+	/**
+	 * Name stored at {@code index}, null for -1.
+	 */
+	String getName(int index) {
+		return index == -1 ? null : names.get(index);
+	}
+
+	private int intern(String name) {
+		if (name == null)
+			return -1;
+
+		int index = nameIndex.getInt(name);
+		if (index == -1) {
+			index = names.size();
+			names.add(name);
+			nameIndex.put(name, index);
+		}
+
+		return index;
+	}
+
+	private void resize(int capacity) {
+		this.capacity = capacity;
+
+		if (status == null) {
+			status = new byte[capacity];
+			quarantineStatus = new byte[capacity];
+			quarantineDate = new int[capacity];
+			statusChanges = new double[capacity * STATUS];
+			currentContainer = new EpisimContainer<?>[capacity];
+			containerSlot = new int[capacity];
+			currentPositionInTrajectory = new int[capacity];
+			startOfDay = new int[capacity * DAYS];
+			endOfDay = new int[capacity * DAYS];
+			traceable = new boolean[capacity];
+			statusChanged = new boolean[capacity];
+			trajectoryOffset = new int[capacity];
+			trajectoryLength = new int[capacity];
+			attributesCached = new boolean[capacity];
+			age = new int[capacity];
+			susceptibility = new double[capacity];
+			viralLoad = new double[capacity];
+			homeId = new int[capacity];
+			district = new int[capacity];
+			return;
+		}
+
+		status = Arrays.copyOf(status, capacity);
+		quarantineStatus = Arrays.copyOf(quarantineStatus, capacity);
+		quarantineDate = Arrays.copyOf(quarantineDate, capacity);
+		statusChanges = Arrays.copyOf(statusChanges, capacity * STATUS);
+		currentContainer = Arrays.copyOf(currentContainer, capacity);
+		containerSlot = Arrays.copyOf(containerSlot, capacity);
+		currentPositionInTrajectory = Arrays.copyOf(currentPositionInTrajectory, capacity);
+		startOfDay = Arrays.copyOf(startOfDay, capacity * DAYS);
+		endOfDay = Arrays.copyOf(endOfDay, capacity * DAYS);
+		traceable = Arrays.copyOf(traceable, capacity);
+		statusChanged = Arrays.copyOf(statusChanged, capacity);
+		trajectoryOffset = Arrays.copyOf(trajectoryOffset, capacity);
+		trajectoryLength = Arrays.copyOf(trajectoryLength, capacity);
+		attributesCached = Arrays.copyOf(attributesCached, capacity);
+		age = Arrays.copyOf(age, capacity);
+		susceptibility = Arrays.copyOf(susceptibility, capacity);
+		viralLoad = Arrays.copyOf(viralLoad, capacity);
+		homeId = Arrays.copyOf(homeId, capacity);
+		district = Arrays.copyOf(district, capacity);
+	}
+
+	/**
+	 * Current capacity of all columns.
+	 */
+	int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Index into {@link #statusChanges}.
+	 */
+	static int statusIndex(int slot, EpisimPerson.DiseaseStatus status) {
+		return slot * STATUS + status.ordinal();
+	}
+
+	/**
+	 * Index into {@link #startOfDay} and {@link #endOfDay}, with day value starting at 1.
+	 */
+	static int dayIndex(int slot, int day) {
+		return slot * DAYS + day - 1;
+	}
+}
@@ -195,79 +195,61 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 
 	/**
 	 * Creates infections reports for the day. Grouped by district, but always containing a "total" entry.
+	 * The reports are created from counters that are maintained during the simulation, see {@link InfectionReportCounters}.
 	 */
-	Map<String, InfectionReport> createReports(Collection<EpisimPerson> persons, int iteration) {
+	Map<String, InfectionReport> createReports(InfectionReportCounters counters, int iteration) {
 
 		Map<String, InfectionReport> reports = new LinkedHashMap<>();
 
+		InfectionReport report = createTotalReport(iteration);
+		reports.put("total", report);
+
+		for (int i = 0; i < counters.getNumberOfDistricts(); i++) {
+			InfectionReport district = new InfectionReport(counters.getName(i), report.time, report.date, report.day);
+
+			district.nSusceptible = counters.get(i, EpisimPerson.DiseaseStatus.susceptible);
+			district.nInfectedButNotContagious = counters.get(i, EpisimPerson.DiseaseStatus.infectedButNotContagious);
+			district.nContagious = counters.get(i, EpisimPerson.DiseaseStatus.contagious);
+			district.nShowingSymptoms = counters.get(i, EpisimPerson.DiseaseStatus.showingSymptoms);
+			district.nSeriouslySick = counters.get(i, EpisimPerson.DiseaseStatus.seriouslySick)
+					+ counters.get(i, EpisimPerson.DiseaseStatus.seriouslySickAfterCritical);
+			district.nCritical = counters.get(i, EpisimPerson.DiseaseStatus.critical);
+			district.nRecovered = counters.get(i, EpisimPerson.DiseaseStatus.recovered);
+			district.nTotalInfected = district.nInfectedButNotContagious + district.nContagious + district.nShowingSymptoms
+					+ district.nSeriouslySick + district.nCritical;
+			district.nInQuarantine = counters.getInQuarantine(i);
+
+			report.nSusceptible += district.nSusceptible;
+			report.nInfectedButNotContagious += district.nInfectedButNotContagious;
+			report.nContagious += district.nContagious;
+			report.nShowingSymptoms += district.nShowingSymptoms;
+			report.nSeriouslySick += district.nSeriouslySick;
+			report.nCritical += district.nCritical;
+			report.nRecovered += district.nRecovered;
+			report.nTotalInfected += district.nTotalInfected;
+			report.nInQuarantine += district.nInQuarantine;
+
+			reports.put(district.name, district);
+		}
+
+		addCumulativeCases(reports);
+
+		return reports;
+	}
+
+	private InfectionReport createTotalReport(int iteration) {
 		double time = EpisimUtils.getCorrectedTime(EpisimUtils.getStartOffset(episimConfig.getStartDate()), 0., iteration);
 		String date = episimConfig.getStartDate().plusDays(iteration - 1).toString();
 
-		InfectionReport report = new InfectionReport("total", time, date, iteration);
-		reports.put("total", report);
+		return new InfectionReport("total", time, date, iteration);
+	}
 
-		for (EpisimPerson person : persons) {
-			String districtName = (String) person.getAttributes().getAttribute("district");
-
-			// Also aggregate by district
-			InfectionReport district = reports.computeIfAbsent(districtName == null ? "unknown"
-					: districtName, name -> new InfectionReport(name, report.time, report.date, report.day));
-			switch (person.getDiseaseStatus()) {
-				case susceptible:
-					report.nSusceptible++;
-					district.nSusceptible++;
-					break;
-				case infectedButNotContagious:
-					report.nInfectedButNotContagious++;
-					district.nInfectedButNotContagious++;
-					report.nTotalInfected++;
-					district.nTotalInfected++;
-					break;
-				case contagious:
-					report.nContagious++;
-					district.nContagious++;
-					report.nTotalInfected++;
-					district.nTotalInfected++;
-					break;
-				case showingSymptoms:
-					report.nShowingSymptoms++;
-					district.nShowingSymptoms++;
-					report.nTotalInfected++;
-					district.nTotalInfected++;
-					break;
-				case seriouslySick:
-				case seriouslySickAfterCritical:
-					report.nSeriouslySick++;
-					district.nSeriouslySick++;
-					report.nTotalInfected++;
-					district.nTotalInfected++;
-					break;
-				case critical:
-					report.nCritical++;
-					district.nCritical++;
-					report.nTotalInfected++;
-					district.nTotalInfected++;
-					break;
-				case recovered:
-					report.nRecovered++;
-					district.nRecovered++;
-					break;
-				default:
-					throw new IllegalStateException("Unexpected value: " + person.getDiseaseStatus());
-			}
-			switch (person.getQuarantineStatus()) {
-				// For now there is no separation in the report between full and home
-				case atHome:
-				case full:
-					report.nInQuarantine++;
-					district.nInQuarantine++;
-					break;
-				case no:
-					break;
-				default:
-					throw new IllegalStateException("Unexpected value: " + person.getQuarantineStatus());
-			}
-		}
+	/**
+	 * Adds cumulative cases to all reports and scales them by the sample size.
+	 */
+	private void addCumulativeCases(Map<String, InfectionReport> reports) {
+
+		InfectionReport report = reports.get("total");
 
 		for (String district : reports.keySet()) {
 
@@ -289,8 +271,6 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 		}
 
 		reports.forEach((k, v) -> v.scale(1 / sampleSize));
-
-		return reports;
 	}
 
 	/**
@@ -387,11 +367,11 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 	 * @see EpisimContactEvent
 	 */
 	public void reportContact(double now, EpisimPerson person, EpisimPerson contactPerson, EpisimContainer<?> container,
-							  StringBuilder actType, double duration) {
+							  String actType, double duration) {
 
 		if (writeEvents == EpisimConfigGroup.WriteEvents.tracing || writeEvents == EpisimConfigGroup.WriteEvents.all) {
 			manager.processEvent(new EpisimContactEvent(now, person.getPersonId(), contactPerson.getPersonId(), container.getContainerId(),
-					actType.toString(), duration, container.getPersons().size()));
+					actType, duration, container.getPersons().size()));
 		}
 
 	}
@@ -456,7 +436,7 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 
 		if (newStatus == EpisimPerson.DiseaseStatus.seriouslySick || newStatus == EpisimPerson.DiseaseStatus.contagious ||
 				newStatus == EpisimPerson.DiseaseStatus.showingSymptoms || newStatus == EpisimPerson.DiseaseStatus.critical) {
-			String districtName = (String) person.getAttributes().getAttribute("district");
+			String districtName = person.getDistrict();
 			cumulativeCases.get(newStatus).mergeInt(districtName == null ? "unknown" : districtName, 1, Integer::sum);
 		}
 
@@ -46,7 +46,7 @@ import java.time.DayOfWeek;
  * Main entry point and runner of one epidemic simulation.
  * <p>
  * Using the {@link #run(int)} method, this class will repeatedly loop over {@link InfectionEventHandler} with
- * events provided by the {@link ReplayHandler}.
+ * events provided by the {@link ReplayHandler}. Unless all events are written, the handler replays its compiled events directly.
  */
 public final class EpisimRunner {
 
@@ -93,7 +93,11 @@ public final class EpisimRunner {
 
 		ControlerUtils.checkConfigConsistencyAndWriteToLog(config, "Just before starting iterations");
 
-		handler.init(replay.getEvents());
+		handler.init(replay.getEvents(), replay.getEventFilter());
+
+		// the handler replays its compiled events, the original events are only needed if they are written
+		if (episimConfig.getWriteEvents() != EpisimConfigGroup.WriteEvents.all)
+			replay.releaseEvents();
 
 		Path output = Path.of(config.controler().getOutputDirectory());
 
@@ -139,10 +143,14 @@ public final class EpisimRunner {
 		if (handler.isFinished())
 			return false;
 
-		DayOfWeek day = EpisimUtils.getDayOfWeek(ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class).getStartDate(), iteration);
+		EpisimConfigGroup episimConfig = ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class);
+		DayOfWeek day = EpisimUtils.getDayOfWeek(episimConfig.getStartDate(), iteration);
 
-		// Process all events
-		replay.replayEvents(manager, day);
+		// Process all events, the original events are only needed if they are written
+		if (episimConfig.getWriteEvents() == EpisimConfigGroup.WriteEvents.all)
+			replay.replayEvents(manager, day);
+		else
+			handler.replay(day);
 
 		reporting.flushEvents();
 
@@ -0,0 +1,456 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CountingInputStream;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.internal.HasPersonId;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Binary cache of the events relevant for episim.
+ * <p>
+ * The cache is stored next to the input file and contains a header with the source path and a content hash of the input.
+ * All ids and activity types are stored once in string tables, events are fixed size records referencing these tables
+ * by index. This allows to memory map the records, which is much faster than parsing the xml again.
+ * <p>
+ * Only {@link ActivityStartEvent}, {@link ActivityEndEvent}, {@link PersonEntersVehicleEvent} and {@link PersonLeavesVehicleEvent}
+ * are stored, other events are discarded.
+ */
+final class EventCache {
+
+	/**
+	 * Suffix appended to the input path.
+	 */
+	static final String SUFFIX = ".episim-cache";
+	/**
+	 * Suffix for caches created with {@link EpisimConfigGroup#getFilterInputEvents()}.
+	 */
+	static final String FILTERED_SUFFIX = ".filtered.episim-cache";
+
+	private static final Logger log = LogManager.getLogger(EventCache.class);
+
+	private static final int MAGIC = 0x45504543;
+	private static final int VERSION = 1;
+
+	static final byte ACTIVITY_START = 1;
+	static final byte ACTIVITY_END = 2;
+	static final byte ENTERS_VEHICLE = 3;
+	static final byte LEAVES_VEHICLE = 4;
+
+	/**
+	 * Fixed record size without the time field: type, person, link, facility, vehicle, actType.
+	 */
+	private static final int RECORD_SIZE = 1 + 5 * 4;
+
+	private EventCache() {
+	}
+
+	/**
+	 * Whether an input can be cached at all. Remote inputs are never cached.
+	 */
+	static boolean isCacheable(String input) {
+		return !input.contains("://") && Files.isRegularFile(Path.of(input));
+	}
+
+	/**
+	 * Path of the cache belonging to an input file.
+	 */
+	static Path getCachePath(String input) {
+		return getCachePath(input, false);
+	}
+
+	/**
+	 * Path of the cache belonging to an input file, filtered caches are stored separately because they contain less events.
+	 */
+	static Path getCachePath(String input, boolean filtered) {
+		return Path.of(input + (filtered ? FILTERED_SUFFIX : SUFFIX));
+	}
+
+	/**
+	 * Content hash of the input file.
+	 */
+	static HashCode hash(Path input) throws IOException {
+		return com.google.common.io.Files.asByteSource(input.toFile()).hash(Hashing.murmur3_128());
+	}
+
+	/**
+	 * Checks whether a valid cache exists for the input. The cache is only valid if path and content hash match.
+	 */
+	static boolean isValid(Path cache, String input, HashCode hash) {
+
+		if (!Files.isRegularFile(cache))
+			return false;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cache)))) {
+			Header header = Header.read(in);
+			return header.source.equals(normalize(input)) && header.hash.equals(hash);
+		} catch (IOException e) {
+			log.warn("Could not read event cache {}", cache, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Writes all relevant {@code events} into a new cache file.
+	 */
+	static void write(Path cache, String input, HashCode hash, List<Event> events) throws IOException {
+
+		StringTable persons = new StringTable();
+		StringTable links = new StringTable();
+		StringTable facilities = new StringTable();
+		StringTable vehicles = new StringTable();
+		StringTable actTypes = new StringTable();
+
+		long n = 0;
+		boolean floatTimes = true;
+
+		// first pass to build the string tables, which need to be written before the records
+		for (Event e : events) {
+			byte type = type(e);
+			if (type == 0) continue;
+
+			n++;
+			floatTimes &= (double) (float) e.getTime() == e.getTime();
+
+			persons.index(((HasPersonId) e).getPersonId());
+			if (type == ACTIVITY_START || type == ACTIVITY_END) {
+				links.index(((HasLinkId) e).getLinkId());
+				facilities.index(((HasFacilityId) e).getFacilityId());
+				actTypes.index(type == ACTIVITY_START ? ((ActivityStartEvent) e).getActType() : ((ActivityEndEvent) e).getActType());
+			} else
+				vehicles.index(type == ENTERS_VEHICLE ? ((PersonEntersVehicleEvent) e).getVehicleId() : ((PersonLeavesVehicleEvent) e).getVehicleId());
+		}
+
+		Path tmp = cache.resolveSibling(cache.getFileName() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 20))) {
+
+			new Header(normalize(input), hash).write(out);
+			out.writeBoolean(floatTimes);
+
+			persons.write(out);
+			links.write(out);
+			facilities.write(out);
+			vehicles.write(out);
+			actTypes.write(out);
+
+			out.writeLong(n);
+
+			for (Event e : events) {
+				byte type = type(e);
+				if (type == 0) continue;
+
+				out.writeByte(type);
+				if (floatTimes)
+					out.writeFloat((float) e.getTime());
+				else
+					out.writeDouble(e.getTime());
+
+				out.writeInt(persons.index(((HasPersonId) e).getPersonId()));
+
+				if (type == ACTIVITY_START || type == ACTIVITY_END) {
+					out.writeInt(links.index(((HasLinkId) e).getLinkId()));
+					out.writeInt(facilities.index(((HasFacilityId) e).getFacilityId()));
+					out.writeInt(-1);
+					out.writeInt(actTypes.index(type == ACTIVITY_START ? ((ActivityStartEvent) e).getActType() : ((ActivityEndEvent) e).getActType()));
+				} else {
+					out.writeInt(-1);
+					out.writeInt(-1);
+					out.writeInt(vehicles.index(type == ENTERS_VEHICLE ? ((PersonEntersVehicleEvent) e).getVehicleId() : ((PersonLeavesVehicleEvent) e).getVehicleId()));
+					out.writeInt(-1);
+				}
+			}
+		}
+
+		Files.move(tmp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads all events from a cache file, which are passed to {@code consumer} in their original order.
+	 */
+	static void read(Path cache, Consumer<Event> consumer) throws IOException {
+		read(cache, consumer, Id::createPersonId);
+	}
+
+	/**
+	 * Reads all events from a cache file, with person ids resolved by {@code personIds}.
+	 *
+	 * @see #read(Path, Consumer)
+	 */
+	static void read(Path cache, Consumer<Event> consumer, Function<String, Id<Person>> personIds) throws IOException {
+
+		Records records = new Records(cache, null, personIds);
+
+		for (int i = 0; i < records.size(); i++) {
+			consumer.accept(records.get(i));
+		}
+	}
+
+	/**
+	 * Maps the events of a cache file into memory, without reading them onto the heap.
+	 * The returned list decodes events on access, see {@link EpisimConfigGroup.EventStorage#mapped}.
+	 *
+	 * @param network network for coordinate lookup, may be null.
+	 */
+	static List<Event> map(Path cache, @Nullable Network network) throws IOException {
+		return new Records(cache, network, Id::createPersonId);
+	}
+
+	/**
+	 * Maps the events of a cache file into memory, with person ids resolved by {@code personIds}.
+	 *
+	 * @see #map(Path, Network)
+	 */
+	static List<Event> map(Path cache, @Nullable Network network, Function<String, Id<Person>> personIds) throws IOException {
+		return new Records(cache, network, personIds);
+	}
+
+	private static Event decode(ByteBuffer buf, int pos, boolean floatTimes, List<Id<Person>> persons, List<Id<Link>> links,
+								List<Id<ActivityFacility>> facilities, List<Id<Vehicle>> vehicles, List<String> actTypes,
+								@Nullable Network network) {
+
+		byte type = buf.get(pos);
+		pos += 1;
+		double time = floatTimes ? buf.getFloat(pos) : buf.getDouble(pos);
+		pos += floatTimes ? 4 : 8;
+		Id<Person> person = persons.get(buf.getInt(pos));
+		int link = buf.getInt(pos + 4);
+		int facility = buf.getInt(pos + 8);
+		int vehicle = buf.getInt(pos + 12);
+		int actType = buf.getInt(pos + 16);
+
+		switch (type) {
+			case ACTIVITY_START:
+				Id<Link> linkId = get(links, link);
+				return new ActivityStartEvent(time, person, linkId, get(facilities, facility), actTypes.get(actType), getCoord(network, linkId));
+			case ACTIVITY_END:
+				return new ActivityEndEvent(time, person, get(links, link), get(facilities, facility), actTypes.get(actType));
+			case ENTERS_VEHICLE:
+				return new PersonEntersVehicleEvent(time, person, vehicles.get(vehicle));
+			case LEAVES_VEHICLE:
+				return new PersonLeavesVehicleEvent(time, person, vehicles.get(vehicle));
+			default:
+				throw new IllegalStateException("Unknown event type in cache: " + type);
+		}
+	}
+
+	@Nullable
+	private static Coord getCoord(@Nullable Network network, @Nullable Id<Link> linkId) {
+		if (network == null || linkId == null)
+			return null;
+
+		Link link = network.getLinks().get(linkId);
+		return link != null ? link.getToNode().getCoord() : null;
+	}
+
+	private static <T> T get(List<T> table, int index) {
+		return index < 0 ? null : table.get(index);
+	}
+
+	/**
+	 * Type of an event, or 0 if it is not stored.
+	 */
+	private static byte type(Event e) {
+		if (e instanceof ActivityStartEvent) return ACTIVITY_START;
+		else if (e instanceof ActivityEndEvent) return ACTIVITY_END;
+		else if (e instanceof PersonEntersVehicleEvent) return ENTERS_VEHICLE;
+		else if (e instanceof PersonLeavesVehicleEvent) return LEAVES_VEHICLE;
+		return 0;
+	}
+
+	private static String normalize(String input) {
+		return Path.of(input).toAbsolutePath().normalize().toString();
+	}
+
+	/**
+	 * Memory mapped event records of a cache file. The string tables are held on the heap, events are decoded on access.
+	 * The mapping is read only, so the same file can be shared by multiple simulations through the page cache.
+	 */
+	private static final class Records extends AbstractList<Event> implements RandomAccess {
+
+		private final boolean floatTimes;
+		private final List<Id<Person>> persons;
+		private final List<Id<Link>> links;
+		private final List<Id<ActivityFacility>> facilities;
+		private final List<Id<Vehicle>> vehicles;
+		private final List<String> actTypes;
+
+		@Nullable
+		private final Network network;
+
+		private final int recordSize;
+		private final int perChunk;
+		private final MappedByteBuffer[] chunks;
+		private final int size;
+
+		private Records(Path cache, @Nullable Network network, Function<String, Id<Person>> personIds) throws IOException {
+
+			this.network = network;
+
+			long n;
+			long offset;
+
+			try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(cache)))) {
+				DataInputStream in = new DataInputStream(counter);
+
+				Header.read(in);
+				floatTimes = in.readBoolean();
+
+				persons = StringTable.read(in, personIds);
+				links = StringTable.read(in, Id::createLinkId);
+				facilities = StringTable.read(in, s -> Id.create(s, ActivityFacility.class));
+				vehicles = StringTable.read(in, Id::createVehicleId);
+				actTypes = StringTable.read(in, String::intern);
+
+				n = in.readLong();
+				offset = counter.getCount();
+			}
+
+			if (n > Integer.MAX_VALUE)
+				throw new IOException("Too many events in cache: " + n);
+
+			size = (int) n;
+			recordSize = RECORD_SIZE + (floatTimes ? 4 : 8);
+
+			// map in chunks, a single buffer can not be larger than 2gb
+			perChunk = Integer.MAX_VALUE / recordSize;
+			chunks = new MappedByteBuffer[(int) ((n + perChunk - 1) / perChunk)];
+
+			try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+				for (int c = 0; c < chunks.length; c++) {
+					long records = Math.min(perChunk, n - (long) c * perChunk);
+					chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset + (long) c * perChunk * recordSize, records * recordSize);
+				}
+			}
+		}
+
+		@Override
+		public Event get(int index) {
+			Objects.checkIndex(index, size);
+
+			// absolute reads do not modify the buffer, so this is safe to use concurrently
+			return decode(chunks[index / perChunk], (index % perChunk) * recordSize, floatTimes,
+					persons, links, facilities, vehicles, actTypes, network);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Header of the cache file.
+	 */
+	private static final class Header {
+
+		private final String source;
+		private final HashCode hash;
+
+		private Header(String source, HashCode hash) {
+			this.source = source;
+			this.hash = hash;
+		}
+
+		private static Header read(DataInput in) throws IOException {
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not an event cache");
+			if (in.readInt() != VERSION)
+				throw new IOException("Unsupported event cache version");
+
+			String source = in.readUTF();
+			byte[] hash = new byte[in.readInt()];
+			in.readFully(hash);
+
+			return new Header(source, HashCode.fromBytes(hash));
+		}
+
+		private void write(DataOutput out) throws IOException {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(source);
+			byte[] bytes = hash.asBytes();
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Assigns consecutive indices to ids or strings.
+	 */
+	private static final class StringTable {
+
+		private final Object2IntMap<String> index = new Object2IntOpenHashMap<>();
+		private final List<String> values = new ArrayList<>();
+
+		private int index(Object value) {
+			if (value == null)
+				return -1;
+
+			return index.computeIfAbsent(value.toString(), (String k) -> {
+				values.add(k);
+				return values.size() - 1;
+			});
+		}
+
+		private void write(DataOutput out) throws IOException {
+			out.writeInt(values.size());
+			for (String v : values) {
+				out.writeUTF(v);
+			}
+		}
+
+		private static <T> List<T> read(DataInput in, Function<String, T> f) throws IOException {
+			int n = in.readInt();
+			List<T> table = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) {
+				table.add(f.apply(in.readUTF()));
+			}
+			return table;
+		}
+	}
+}
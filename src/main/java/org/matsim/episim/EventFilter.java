@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import it.unimi.dsi.fastutil.objects.Reference2BooleanMap;
+import it.unimi.dsi.fastutil.objects.Reference2BooleanOpenHashMap;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.TripStructureUtils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which persons and activities are relevant for the {@link InfectionEventHandler}.
+ * <p>
+ * The decisions are computed once when the filter is created: for every person id that exists at this time by the index of the id,
+ * and for every activity type of the given events by reference, since activity types are canonicalized by the {@link ReplayHandler}.
+ * Persons and activity types that are not known to the filter are decided directly. Each {@link ReplayHandler} holds the filter for its
+ * events, see {@link ReplayHandler#getEventFilter()}. The filter is immutable and can be used from multiple threads.
+ */
+public final class EventFilter {
+
+	private static final byte IGNORE_ACTIVITY = 1;
+	private static final byte IGNORE_PERSON = 2;
+
+	/**
+	 * Flags by index of the person id.
+	 */
+	private final byte[] persons;
+
+	/**
+	 * Whether an activity type is a stage activity.
+	 */
+	private final Reference2BooleanMap<String> stageActivities = new Reference2BooleanOpenHashMap<>();
+
+	/**
+	 * Creates the filter for all existing person ids and the activity types of {@code events}.
+	 */
+	public EventFilter(Collection<List<Event>> events) {
+
+		persons = new byte[Id.getNumberOfIds(Person.class)];
+		for (int i = 0; i < persons.length; i++) {
+			persons[i] = computeFlags(Id.get(i, Person.class).toString());
+		}
+
+		// the same list may be used for several days
+		Set<List<Event>> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (List<Event> eventsForDay : events) {
+			if (!distinct.add(eventsForDay))
+				continue;
+
+			for (Event event : eventsForDay) {
+				if (event instanceof ActivityStartEvent)
+					addActivityType(((ActivityStartEvent) event).getActType());
+				else if (event instanceof ActivityEndEvent)
+					addActivityType(((ActivityEndEvent) event).getActType());
+			}
+		}
+	}
+
+	private void addActivityType(String actType) {
+		if (!stageActivities.containsKey(actType))
+			stageActivities.put(actType, TripStructureUtils.isStageActivityType(actType));
+	}
+
+	/**
+	 * Whether activities of this person with {@code actType} should be handled. Drt and stage activities are ignored.
+	 */
+	public boolean shouldHandleActivity(Id<Person> personId, String actType) {
+		return (flags(personId) & IGNORE_ACTIVITY) == 0 && !isStageActivity(actType);
+	}
+
+	/**
+	 * Whether person events (e.g. entering vehicles) of this person should be handled. Pt drivers and drt are ignored.
+	 */
+	public boolean shouldHandlePerson(Id<Person> personId) {
+		return (flags(personId) & IGNORE_PERSON) == 0;
+	}
+
+	/**
+	 * Whether {@code actType} is a stage activity.
+	 */
+	public boolean isStageActivity(String actType) {
+		if (stageActivities.containsKey(actType))
+			return stageActivities.getBoolean(actType);
+
+		return TripStructureUtils.isStageActivityType(actType);
+	}
+
+	private byte flags(Id<Person> personId) {
+		int index = personId.index();
+		return index < persons.length ? persons[index] : computeFlags(personId.toString());
+	}
+
+	/**
+	 * Whether activities of the person with this id and {@code actType} should be handled, computed without a filter instance.
+	 */
+	static boolean handlesActivity(String personId, String actType) {
+		return (computeFlags(personId) & IGNORE_ACTIVITY) == 0 && !TripStructureUtils.isStageActivityType(actType);
+	}
+
+	/**
+	 * Whether person events of the person with this id should be handled, computed without a filter instance or creating the id.
+	 */
+	static boolean handlesPerson(String personId) {
+		return (computeFlags(personId) & IGNORE_PERSON) == 0;
+	}
+
+	private static byte computeFlags(String id) {
+		byte flags = 0;
+		if (id.startsWith("drt") || id.startsWith("rt"))
+			flags |= IGNORE_ACTIVITY | IGNORE_PERSON;
+		else if (id.startsWith("pt_pt") || id.startsWith("pt_tr"))
+			flags |= IGNORE_PERSON;
+
+		return flags;
+	}
+}
@@ -37,12 +37,12 @@ import org.matsim.api.core.v01.events.handler.ActivityEndEventHandler;
 import org.matsim.api.core.v01.events.handler.ActivityStartEventHandler;
 import org.matsim.api.core.v01.events.handler.PersonEntersVehicleEventHandler;
 import org.matsim.api.core.v01.events.handler.PersonLeavesVehicleEventHandler;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.api.internal.HasPersonId;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.gbl.Gbl;
-import org.matsim.core.router.TripStructureUtils;
 import org.matsim.episim.EpisimPerson.DiseaseStatus;
 import org.matsim.episim.model.ContactModel;
 import org.matsim.episim.model.ProgressionModel;
@@ -52,14 +52,20 @@ import org.matsim.facilities.ActivityFacility;
 import org.matsim.utils.objectattributes.attributable.Attributes;
 import org.matsim.vehicles.Vehicle;
 
+import javax.annotation.Nullable;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.matsim.episim.EpisimUtils.readChars;
 import static org.matsim.episim.EpisimUtils.writeChars;
@@ -90,6 +96,11 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 	private static final Logger log = LogManager.getLogger(InfectionEventHandler.class);
 
 	private final Map<Id<Person>, EpisimPerson> personMap = new IdMap<>(Person.class);
+
+	/**
+	 * State of all persons, indexed by their id.
+	 */
+	private final EpisimPersonStore personStore = new EpisimPersonStore(Id.getNumberOfIds(Person.class));
 	private final Map<Id<Vehicle>, EpisimVehicle> vehicleMap = new IdMap<>(Vehicle.class);
 	private final Map<Id<ActivityFacility>, EpisimFacility> pseudoFacilityMap = new IdMap<>(ActivityFacility.class,
 			// the number of facility ids is not known beforehand, so we use this as initial estimate
@@ -101,6 +112,34 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 	 */
 	private final Map<String, EpisimPerson.Activity> paramsMap = new IdentityHashMap<>();
 
+	/**
+	 * Decides which events are handled, set by {@link #init(Map, EventFilter)}.
+	 */
+	private EventFilter filter;
+
+	/**
+	 * Prefix of each (canonicalized) activity type, which is used for {@link EpisimConfigGroup.FacilitiesHandling#bln} facility ids.
+	 * Prefixes are interned, so that all activity types with the same prefix share one entry in {@link #blnFacilityIds}.
+	 */
+	private final Map<String, String> blnPrefixes = new IdentityHashMap<>();
+
+	/**
+	 * Episim facility ids for {@link EpisimConfigGroup.FacilitiesHandling#bln}, by activity type prefix and link.
+	 */
+	private final Map<String, Map<Id<Link>, Id<ActivityFacility>>> blnFacilityIds = new IdentityHashMap<>();
+
+	/**
+	 * Compiled events for each day, see {@link #replay(DayOfWeek)}.
+	 */
+	private final Map<DayOfWeek, ReplayProgram> programs = new EnumMap<>(DayOfWeek.class);
+
+	/**
+	 * Persons, containers and activity types referenced by index in the {@link ReplayProgram}s.
+	 */
+	private EpisimPerson[] replayPersons;
+	private EpisimContainer<?>[] replayContainers;
+	private String[] replayActTypes;
+
 	/**
 	 * Holds the current restrictions in place for all the activities.
 	 */
@@ -170,8 +209,7 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 	 */
 	public static boolean shouldHandleActivityEvent(HasPersonId event, String actType) {
 		// ignore drt and stage activities
-		return !event.getPersonId().toString().startsWith("drt") && !event.getPersonId().toString().startsWith("rt")
-				&& !TripStructureUtils.isStageActivityType(actType);
+		return EventFilter.handlesActivity(event.getPersonId().toString(), actType);
 	}
 
 	/**
@@ -179,8 +217,7 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 	 */
 	public static boolean shouldHandlePersonEvent(HasPersonId event) {
 		// ignore pt drivers and drt
-		String id = event.getPersonId().toString();
-		return !id.startsWith("pt_pt") && !id.startsWith("pt_tr") && !id.startsWith("drt") && !id.startsWith("rt");
+		return EventFilter.handlesPerson(event.getPersonId().toString());
 	}
 
 	/**
@@ -204,8 +241,19 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 	 * @param events All events in the simulation
 	 */
 	public void init(Map<DayOfWeek, List<Event>> events) {
+		init(events, new EventFilter(events.values()));
+	}
+
+	/**
+	 * Initializes all needed data structures before the simulation can start, see {@link #init(Map)}.
+	 *
+	 * @param events All events in the simulation
+	 * @param filter filter for these events, usually {@link ReplayHandler#getEventFilter()}
+	 */
+	public void init(Map<DayOfWeek, List<Event>> events, EventFilter filter) {
 
 		iteration = 0;
+		this.filter = filter;
 
 		Object2IntMap<EpisimContainer<?>> groupSize = new Object2IntOpenHashMap<>();
 		Object2IntMap<EpisimContainer<?>> containerSize = new Object2IntOpenHashMap<>();
@@ -214,6 +262,18 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		Map<EpisimContainer<?>, Object2IntMap<String>> activityUsage = new HashMap<>();
 
 		Map<List<Event>, DayOfWeek> sameDay = new IdentityHashMap<>(7);
+		List<List<Event>> distinctDays = new ArrayList<>();
+
+		// tables for the compiled events
+		List<EpisimPerson> persons = new ArrayList<>();
+		List<EpisimContainer<?>> containers = new ArrayList<>();
+		List<String> actTypes = new ArrayList<>();
+		Object2IntMap<EpisimPerson> personIndex = new Object2IntOpenHashMap<>();
+		Object2IntMap<EpisimContainer<?>> containerIndex = new Object2IntOpenHashMap<>();
+		Object2IntMap<String> actTypeIndex = new Object2IntOpenHashMap<>();
+		personIndex.defaultReturnValue(-1);
+		containerIndex.defaultReturnValue(-1);
+		actTypeIndex.defaultReturnValue(-1);
 
 		for (Map.Entry<DayOfWeek, List<Event>> entry : events.entrySet()) {
 
@@ -224,21 +284,30 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 				DayOfWeek same = sameDay.get(eventsForDay);
 				log.info("Init Day {} same as {}", day, same);
 				this.personMap.values().forEach(p -> p.duplicateDay(day, same));
+				programs.put(day, programs.get(same));
 				continue;
 			}
 
 			log.info("Init day {}", day);
 
+			// for delta days only the changed events are compiled
+			DeltaEventList delta = eventsForDay instanceof DeltaEventList ? (DeltaEventList) eventsForDay : null;
+			ReplayProgram program = new ReplayProgram(delta != null);
+
 			this.personMap.values().forEach(p -> p.setStartOfDay(day, p.getCurrentPositionInTrajectory()));
 
+			int position = -1;
 			for (Event event : eventsForDay) {
 
+				position++;
+				boolean fromBase = delta != null && !delta.isDelta(position);
+
 				EpisimPerson person = null;
 				EpisimFacility facility = null;
 
 				// Add all person and facilities
 				if (event instanceof HasPersonId) {
-					if (!shouldHandlePersonEvent((HasPersonId) event)) continue;
+					if (!filter.shouldHandlePerson(((HasPersonId) event).getPersonId())) continue;
 
 					person = this.personMap.computeIfAbsent(((HasPersonId) event).getPersonId(), this::createPerson);
 
@@ -257,39 +326,28 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 
 				if (event instanceof HasFacilityId) {
 					Id<ActivityFacility> episimFacilityId = createEpisimFacilityId((HasFacilityId) event);
-					facility = this.pseudoFacilityMap.computeIfAbsent(episimFacilityId, EpisimFacility::new);
+					facility = this.pseudoFacilityMap.computeIfAbsent(episimFacilityId, this::createFacility);
 				}
 
 				if (event instanceof ActivityStartEvent) {
 
 					String actType = ((ActivityStartEvent) event).getActType();
-					if (!shouldHandleActivityEvent((HasPersonId) event, actType))
+					if (!filter.shouldHandleActivity(((HasPersonId) event).getPersonId(), actType))
 						continue;
 
 					EpisimPerson.Activity act = paramsMap.computeIfAbsent(actType, this::createActivityType);
-					maxGroupSize.mergeInt(facility, groupSize.mergeInt(facility, 1, Integer::sum), Integer::max);
-					containerSize.mergeInt(facility, 1, Integer::sum);
 
-					handleEvent((ActivityStartEvent) event);
+					handleActivityStart(person, facility, actType, EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), event.getTime(), iteration));
+					compile(program, fromBase, ReplayProgram.ACTIVITY_START, index(personIndex, persons, person), index(containerIndex, containers, facility),
+							index(actTypeIndex, actTypes, actType), event.getTime());
 
 				} else if (event instanceof ActivityEndEvent) {
 					String actType = ((ActivityEndEvent) event).getActType();
-					if (!shouldHandleActivityEvent((HasPersonId) event, actType))
+					if (!filter.shouldHandleActivity(((HasPersonId) event).getPersonId(), actType))
 						continue;
 
 					EpisimPerson.Activity act = paramsMap.computeIfAbsent(actType, this::createActivityType);
 
-					// Prevent negative group size for persons starting with end activity
-					if (groupSize.getOrDefault(facility, 0) == 0) {
-						groupSize.put(facility, 1);
-						// add one to maximum group size
-						maxGroupSize.mergeInt(facility, 1, Integer::sum);
-					}
-
-
-					groupSize.mergeInt(facility, -1, Integer::sum);
-					activityUsage.computeIfAbsent(facility, k -> new Object2IntOpenHashMap<>()).mergeInt(actType, 1, Integer::sum);
-
 					// Add person to container if it starts its day with end activity
 					if (person.getFirstFacilityId(day) == null) {
 						// person may already be there because of previous day
@@ -305,34 +363,33 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 						person.setFirstFacilityId(facility.getContainerId(), day);
 					}
 
-					handleEvent((ActivityEndEvent) event);
+					handleActivityEnd(person, facility, actType, EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), event.getTime(), iteration));
+					compile(program, fromBase, ReplayProgram.ACTIVITY_END, index(personIndex, persons, person), index(containerIndex, containers, facility),
+							index(actTypeIndex, actTypes, actType), event.getTime());
 				}
 
 				if (event instanceof PersonEntersVehicleEvent) {
-					if (!shouldHandlePersonEvent((HasPersonId) event)) continue;
-
-					EpisimVehicle vehicle = this.vehicleMap.computeIfAbsent(((PersonEntersVehicleEvent) event).getVehicleId(), EpisimVehicle::new);
+					if (!filter.shouldHandlePerson(((HasPersonId) event).getPersonId())) continue;
 
-					maxGroupSize.mergeInt(vehicle, groupSize.mergeInt(vehicle, 1, Integer::sum), Integer::max);
-					containerSize.mergeInt(vehicle, 1, Integer::sum);
+					EpisimVehicle vehicle = this.vehicleMap.computeIfAbsent(((PersonEntersVehicleEvent) event).getVehicleId(), this::createVehicle);
 
-					handleEvent((PersonEntersVehicleEvent) event);
+					handleEntersVehicle(person, vehicle, EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), event.getTime(), iteration));
+					compile(program, fromBase, ReplayProgram.ENTERS_VEHICLE, index(personIndex, persons, person), index(containerIndex, containers, vehicle),
+							-1, event.getTime());
 
 				} else if (event instanceof PersonLeavesVehicleEvent) {
-					if (!shouldHandlePersonEvent((HasPersonId) event)) continue;
-
-					EpisimVehicle vehicle = this.vehicleMap.computeIfAbsent(((PersonLeavesVehicleEvent) event).getVehicleId(), EpisimVehicle::new);
-					groupSize.mergeInt(vehicle, -1, Integer::sum);
-					activityUsage.computeIfAbsent(vehicle, k -> new Object2IntOpenHashMap<>()).mergeInt("tr", 1, Integer::sum);
+					if (!filter.shouldHandlePerson(((HasPersonId) event).getPersonId())) continue;
 
+					EpisimVehicle vehicle = this.vehicleMap.computeIfAbsent(((PersonLeavesVehicleEvent) event).getVehicleId(), this::createVehicle);
 
-					handleEvent((PersonLeavesVehicleEvent) event);
+					handleLeavesVehicle(person, vehicle, EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), event.getTime(), iteration));
+					compile(program, fromBase, ReplayProgram.LEAVES_VEHICLE, index(personIndex, persons, person), index(containerIndex, containers, vehicle),
+							-1, event.getTime());
 				}
 			}
 
 			int cnt = 0;
 			for (EpisimPerson person : this.personMap.values()) {
-				List<EpisimPerson.Activity> tj = person.getTrajectory();
 
 				// person that didn't move will be put at home the whole day
 				if (person.getFirstFacilityId(day) == null && person.getCurrentPositionInTrajectory() == person.getStartOfDay(day)) {
@@ -345,22 +402,59 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 				}
 
 				// close open trajectories by repeating last element
-				if (tj.size() == person.getCurrentPositionInTrajectory()) {
-					person.addToTrajectory(tj.get(tj.size() - 1));
+				if (person.getTrajectorySize() == person.getCurrentPositionInTrajectory()) {
+					person.addToTrajectory(person.getTrajectoryElement(person.getTrajectorySize() - 1));
 					person.incrementCurrentPositionInTrajectory();
 
 					if (person.getFirstFacilityId(day) == null)
 						person.setFirstFacilityId(createHomeFacility(person).getContainerId(), day);
 				}
 
-				person.setEndOfDay(day, tj.size() - 1);
+				person.setEndOfDay(day, person.getTrajectorySize() - 1);
 			}
 
 			log.info("Persons stationary on {}: {} ({}%)", day, cnt, cnt * 100.0 / personMap.size());
 
 			sameDay.put(eventsForDay, day);
+			distinctDays.add(eventsForDay);
+
+			program.trim();
+			if (episimConfig.getEventStorage() == EpisimConfigGroup.EventStorage.mapped)
+				mapProgram(day, program);
+
+			programs.put(day, program);
 		}
 
+		// all containers exist now, group sizes are counted for each distinct day in parallel and merged in order of the days
+		for (ContainerStatistics stats : collectStatistics(distinctDays)) {
+			stats.mergeInto(groupSize, maxGroupSize, containerSize, activityUsage);
+		}
+
+		for (Map.Entry<DayOfWeek, List<Event>> entry : events.entrySet()) {
+			if (entry.getValue() instanceof DeltaEventList && programs.get(entry.getKey()).getBase() == null) {
+				DeltaEventList delta = (DeltaEventList) entry.getValue();
+				DayOfWeek baseDay = sameDay.get(delta.getBase());
+				if (baseDay == null)
+					throw new IllegalStateException("Base events of " + entry.getKey() + " are not used by any day.");
+
+				// translate id indices to person indices of the program
+				BitSet changed = new BitSet(persons.size());
+				BitSet changedIds = delta.getChangedPersons();
+				for (int i = changedIds.nextSetBit(0); i >= 0; i = changedIds.nextSetBit(i + 1)) {
+					EpisimPerson person = personMap.get(Id.get(i, Person.class));
+					int idx = person != null ? personIndex.getInt(person) : -1;
+					if (idx != -1)
+						changed.set(idx);
+				}
+
+				programs.get(entry.getKey()).setBase(programs.get(baseDay), changed);
+			}
+		}
+
+		replayPersons = persons.toArray(new EpisimPerson[0]);
+		replayContainers = containers.toArray(new EpisimContainer<?>[0]);
+		replayActTypes = actTypes.toArray(new String[0]);
+
 		insertStationaryAgents();
 
 		// Add missing facilities, with only stationary agents
@@ -390,6 +484,15 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 
 		// Clear time-use after first iteration
 		personMap.values().forEach(p -> p.getSpentTime().clear());
+
+		// trajectories are complete now and can be shared between persons
+		personMap.values().forEach(EpisimPerson::sealTrajectory);
+		log.info("Stored {} distinct trajectories for {} persons", personStore.trajectories.getNumberOfTrajectories(), personMap.size());
+		personStore.trajectories.trim();
+
+		// attributes are read in hot paths, thus they are stored in typed columns
+		personMap.values().forEach(EpisimPerson::cacheAttributes);
+
 		init = true;
 	}
 
@@ -399,7 +502,7 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 //		double now = activityStartEvent.getTime();
 		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), activityStartEvent.getTime(), iteration);
 
-		if (!shouldHandleActivityEvent(activityStartEvent, activityStartEvent.getActType())) {
+		if (!filter.shouldHandleActivity(activityStartEvent.getPersonId(), activityStartEvent.getActType())) {
 			return;
 		}
 
@@ -412,11 +515,7 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		// find the facility
 		EpisimFacility episimFacility = this.pseudoFacilityMap.get(episimFacilityId);
 
-		// add person to facility
-		episimFacility.addPerson(episimPerson, now);
-
-		handlePersonTrajectory(episimPerson.getPersonId(), activityStartEvent.getActType());
-
+		handleActivityStart(episimPerson, episimFacility, activityStartEvent.getActType(), now);
 	}
 
 	@Override
@@ -425,26 +524,14 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), activityEndEvent.getTime(), iteration);
 
 
-		if (!shouldHandleActivityEvent(activityEndEvent, activityEndEvent.getActType())) {
+		if (!filter.shouldHandleActivity(activityEndEvent.getPersonId(), activityEndEvent.getActType())) {
 			return;
 		}
 
 		EpisimPerson episimPerson = this.personMap.get(activityEndEvent.getPersonId());
 		Id<ActivityFacility> episimFacilityId = createEpisimFacilityId(activityEndEvent);
 
-		EpisimFacility episimFacility = (EpisimFacility) episimPerson.getCurrentContainer();
-		if (!episimFacility.equals(pseudoFacilityMap.get(episimFacilityId))) {
-			throw new IllegalStateException("Person=" + episimPerson.getPersonId().toString() + " has activity end event at facility=" + episimFacilityId + " but actually is at facility=" + episimFacility.getContainerId().toString());
-		}
-
-		contactModel.infectionDynamicsFacility(episimPerson, episimFacility, now, activityEndEvent.getActType());
-		double timeSpent = now - episimFacility.getContainerEnteringTime(episimPerson.getPersonId());
-		episimPerson.addSpentTime(activityEndEvent.getActType(), timeSpent);
-
-		episimFacility.removePerson(episimPerson);
-
-		handlePersonTrajectory(episimPerson.getPersonId(), activityEndEvent.getActType());
-
+		handleActivityEnd(episimPerson, pseudoFacilityMap.get(episimFacilityId), activityEndEvent.getActType(), now);
 	}
 
 	@Override
@@ -453,7 +540,7 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), entersVehicleEvent.getTime(), iteration);
 
 
-		if (!shouldHandlePersonEvent(entersVehicleEvent)) {
+		if (!filter.shouldHandlePerson(entersVehicleEvent.getPersonId())) {
 			return;
 		}
 
@@ -463,9 +550,7 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		// find the vehicle:
 		EpisimVehicle episimVehicle = this.vehicleMap.get(entersVehicleEvent.getVehicleId());
 
-		// add person to vehicle and memorize entering time:
-		episimVehicle.addPerson(episimPerson, now);
-
+		handleEntersVehicle(episimPerson, episimVehicle, now);
 	}
 
 	@Override
@@ -474,7 +559,7 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), leavesVehicleEvent.getTime(), iteration);
 
 
-		if (!shouldHandlePersonEvent(leavesVehicleEvent)) {
+		if (!filter.shouldHandlePerson(leavesVehicleEvent.getPersonId())) {
 			return;
 		}
 
@@ -483,9 +568,80 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 
 		EpisimPerson episimPerson = this.personMap.get(leavesVehicleEvent.getPersonId());
 
+		handleLeavesVehicle(episimPerson, episimVehicle, now);
+	}
+
+	/**
+	 * Executes the compiled events of {@code day}. This is equivalent to processing all events of this day
+	 * with {@link #handleEvent(ActivityStartEvent)} and the other event methods, but avoids dispatching and lookups.
+	 */
+	public void replay(DayOfWeek day) {
+
+		if (!init)
+			throw new IllegalStateException(".init() was not called!");
+
+		long startOffset = episimConfig.getStartOffset();
+		programs.get(day).execute((program, i) -> execute(program, i, startOffset));
+	}
+
+	private void execute(ReplayProgram program, int i, long startOffset) {
+
+		EpisimPerson person = replayPersons[program.getPerson(i)];
+		EpisimContainer<?> container = replayContainers[program.getContainer(i)];
+		double now = EpisimUtils.getCorrectedTime(startOffset, program.getTime(i), iteration);
+
+		switch (program.getOp(i)) {
+			case ReplayProgram.ACTIVITY_START:
+				handleActivityStart(person, (EpisimFacility) container, replayActTypes[program.getActType(i)], now);
+				break;
+			case ReplayProgram.ACTIVITY_END:
+				handleActivityEnd(person, (EpisimFacility) container, replayActTypes[program.getActType(i)], now);
+				break;
+			case ReplayProgram.ENTERS_VEHICLE:
+				handleEntersVehicle(person, (EpisimVehicle) container, now);
+				break;
+			case ReplayProgram.LEAVES_VEHICLE:
+				handleLeavesVehicle(person, (EpisimVehicle) container, now);
+				break;
+			default:
+				throw new IllegalStateException("Unknown operation " + program.getOp(i));
+		}
+	}
+
+	private void handleActivityStart(EpisimPerson episimPerson, EpisimFacility episimFacility, String actType, double now) {
+
+		// add person to facility
+		episimFacility.addPerson(episimPerson, now);
+
+		handlePersonTrajectory(episimPerson, actType);
+	}
+
+	private void handleActivityEnd(EpisimPerson episimPerson, EpisimFacility episimFacility, String actType, double now) {
+
+		if (episimPerson.getCurrentContainer() != episimFacility) {
+			throw new IllegalStateException("Person=" + episimPerson.getPersonId().toString() + " has activity end event at facility=" + episimFacility.getContainerId() + " but actually is at container=" + episimPerson.getCurrentContainer());
+		}
+
+		contactModel.infectionDynamicsFacility(episimPerson, episimFacility, now, actType);
+		double timeSpent = now - episimFacility.getContainerEnteringTime(episimPerson);
+		episimPerson.addSpentTime(actType, timeSpent);
+
+		episimFacility.removePerson(episimPerson);
+
+		handlePersonTrajectory(episimPerson, actType);
+	}
+
+	private void handleEntersVehicle(EpisimPerson episimPerson, EpisimVehicle episimVehicle, double now) {
+
+		// add person to vehicle and memorize entering time:
+		episimVehicle.addPerson(episimPerson, now);
+	}
+
+	private void handleLeavesVehicle(EpisimPerson episimPerson, EpisimVehicle episimVehicle, double now) {
+
 		contactModel.infectionDynamicsVehicle(episimPerson, episimVehicle, now);
 
-		double timeSpent = now - episimVehicle.getContainerEnteringTime(episimPerson.getPersonId());
+		double timeSpent = now - episimVehicle.getContainerEnteringTime(episimPerson);
 
 		// This type depends on the params defined in the scenario
 		episimPerson.addSpentTime("pt", timeSpent);
@@ -494,7 +650,6 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		episimVehicle.removePerson(episimPerson);
 	}
 
-
 	/**
 	 * Create a new person and lookup attributes from scenario.
 	 */
@@ -510,20 +665,34 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 
 		boolean traceable = localRnd.nextDouble() < tracingConfig.getEquipmentRate();
 
-		return new EpisimPerson(id, attrs, traceable, reporting);
+		return new EpisimPerson(id, attrs, traceable, reporting, personStore, id.index());
 	}
 
 	/**
 	 * Creates the home facility of a person.
 	 */
 	private EpisimFacility createHomeFacility(EpisimPerson person) {
-		String homeId = (String) person.getAttributes().getAttribute("homeId");
+		String homeId = person.getHomeId();
 		if (homeId == null)
 			homeId = "home_of_" + person.getPersonId().toString();
 
 		Id<ActivityFacility> facilityId = Id.create(homeId, ActivityFacility.class);
 		// add facility that might not exist yet
-		return this.pseudoFacilityMap.computeIfAbsent(facilityId, EpisimFacility::new);
+		return this.pseudoFacilityMap.computeIfAbsent(facilityId, this::createFacility);
+	}
+
+	/**
+	 * Creates a facility with the configured {@link EpisimConfigGroup.ContainerOrder}.
+	 */
+	private EpisimFacility createFacility(Id<ActivityFacility> id) {
+		return new EpisimFacility(id, episimConfig.getContainerOrder() == EpisimConfigGroup.ContainerOrder.entering);
+	}
+
+	/**
+	 * Creates a vehicle with the configured {@link EpisimConfigGroup.ContainerOrder}.
+	 */
+	private EpisimVehicle createVehicle(Id<Vehicle> id) {
+		return new EpisimVehicle(id, episimConfig.getContainerOrder() == EpisimConfigGroup.ContainerOrder.entering);
 	}
 
 	private EpisimPerson.Activity createActivityType(String actType) {
@@ -538,13 +707,13 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 
 			return id;
 		} else if (episimConfig.getFacilitiesHandling() == EpisimConfigGroup.FacilitiesHandling.bln) {
-			// TODO: this has poor performance and should be preprocessing...
+			// ids are only created once, compiled events contain the facility directly
 			if (event instanceof ActivityStartEvent) {
 				ActivityStartEvent theEvent = (ActivityStartEvent) event;
-				return Id.create(theEvent.getActType().split("_")[0] + "_" + theEvent.getLinkId().toString(), ActivityFacility.class);
+				return createBlnFacilityId(theEvent.getActType(), theEvent.getLinkId());
 			} else if (event instanceof ActivityEndEvent) {
 				ActivityEndEvent theEvent = (ActivityEndEvent) event;
-				return Id.create(theEvent.getActType().split("_")[0] + "_" + theEvent.getLinkId().toString(), ActivityFacility.class);
+				return createBlnFacilityId(theEvent.getActType(), theEvent.getLinkId());
 			} else {
 				throw new IllegalStateException("unexpected event type=" + ((Event) event).getEventType());
 			}
@@ -554,10 +723,108 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 
 	}
 
-	private void handlePersonTrajectory(Id<Person> personId, String trajectoryElement) {
-		EpisimPerson person = personMap.get(personId);
+	/**
+	 * Collects the {@link ContainerStatistics} of each event list, using one thread per list.
+	 * All containers must have been created already, because the container maps are only read.
+	 */
+	private List<ContainerStatistics> collectStatistics(List<List<Event>> days) {
+
+		int threads = Math.min(days.size(), Runtime.getRuntime().availableProcessors());
+		if (threads <= 1) {
+			List<ContainerStatistics> stats = new ArrayList<>();
+			for (List<Event> eventsForDay : days) {
+				stats.add(collectStatistics(eventsForDay));
+			}
+			return stats;
+		}
+
+		log.info("Collecting container statistics of {} days using {} threads", days.size(), threads);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<CompletableFuture<ContainerStatistics>> futures = new ArrayList<>();
+			for (List<Event> eventsForDay : days) {
+				futures.add(CompletableFuture.supplyAsync(() -> collectStatistics(eventsForDay), executor));
+			}
+
+			List<ContainerStatistics> stats = new ArrayList<>();
+			for (CompletableFuture<ContainerStatistics> f : futures) {
+				stats.add(f.join());
+			}
+			return stats;
+
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+
+			throw e;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Counts group sizes and activity usage of the containers for the events of one day.
+	 */
+	private ContainerStatistics collectStatistics(List<Event> eventsForDay) {
+
+		ContainerStatistics stats = new ContainerStatistics();
+
+		for (Event event : eventsForDay) {
+
+			if (event instanceof HasPersonId && !filter.shouldHandlePerson(((HasPersonId) event).getPersonId()))
+				continue;
+
+			if (event instanceof ActivityStartEvent) {
+				String actType = ((ActivityStartEvent) event).getActType();
+				if (filter.shouldHandleActivity(((HasPersonId) event).getPersonId(), actType))
+					stats.enter(lookupFacility((HasFacilityId) event));
+
+			} else if (event instanceof ActivityEndEvent) {
+				String actType = ((ActivityEndEvent) event).getActType();
+				// Prevent negative group size for persons starting with end activity
+				if (filter.shouldHandleActivity(((HasPersonId) event).getPersonId(), actType))
+					stats.leave(lookupFacility((HasFacilityId) event), actType, true);
+
+			} else if (event instanceof PersonEntersVehicleEvent) {
+				stats.enter(vehicleMap.get(((PersonEntersVehicleEvent) event).getVehicleId()));
+
+			} else if (event instanceof PersonLeavesVehicleEvent) {
+				stats.leave(vehicleMap.get(((PersonLeavesVehicleEvent) event).getVehicleId()), "tr", false);
+			}
+		}
+
+		return stats;
+	}
+
+	/**
+	 * Facility of an event, without creating any ids or facilities so that it can be used concurrently.
+	 */
+	private EpisimFacility lookupFacility(HasFacilityId event) {
+		Id<ActivityFacility> id;
+		if (episimConfig.getFacilitiesHandling() == EpisimConfigGroup.FacilitiesHandling.bln) {
+			if (event instanceof ActivityStartEvent)
+				id = blnFacilityIds.get(blnPrefixes.get(((ActivityStartEvent) event).getActType())).get(((ActivityStartEvent) event).getLinkId());
+			else
+				id = blnFacilityIds.get(blnPrefixes.get(((ActivityEndEvent) event).getActType())).get(((ActivityEndEvent) event).getLinkId());
+		} else
+			id = createEpisimFacilityId(event);
+
+		return pseudoFacilityMap.get(id);
+	}
+
+	/**
+	 * Pseudo facility id consisting of activity type and link.
+	 */
+	private Id<ActivityFacility> createBlnFacilityId(String actType, Id<Link> linkId) {
+		String prefix = blnPrefixes.computeIfAbsent(actType, k -> k.split("_")[0].intern());
+		return blnFacilityIds.computeIfAbsent(prefix, k -> new IdMap<>(Link.class))
+				.computeIfAbsent(linkId, k -> Id.create(prefix + "_" + linkId.toString(), ActivityFacility.class));
+	}
+
+	private void handlePersonTrajectory(EpisimPerson person, String trajectoryElement) {
 
-		if (person.getCurrentPositionInTrajectory() + 1 == person.getTrajectory().size()) {
+		if (person.getCurrentPositionInTrajectory() + 1 == person.getTrajectorySize()) {
 			return;
 		}
 		person.incrementCurrentPositionInTrajectory();
@@ -569,6 +836,43 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		person.addToTrajectory(act);
 	}
 
+	/**
+	 * Returns the index of {@code value} in {@code table} and adds it if not present.
+	 */
+	private static <T> int index(Object2IntMap<T> index, List<T> table, T value) {
+		int i = index.getInt(value);
+		if (i == -1) {
+			i = table.size();
+			table.add(value);
+			index.put(value, i);
+		}
+		return i;
+	}
+
+	/**
+	 * Moves a compiled program into a temporary memory mapped file, so that it is not held on the heap.
+	 * The program stays on the heap if the file can not be created.
+	 */
+	private static void mapProgram(DayOfWeek day, ReplayProgram program) {
+		try {
+			Path file = Files.createTempFile("episim-replay-" + day, ".bin");
+			file.toFile().deleteOnExit();
+			program.map(file);
+		} catch (IOException e) {
+			log.warn("Could not map compiled events of {}, keeping them on heap", day, e);
+		}
+	}
+
+	/**
+	 * Adds an instruction to the program, unless it is taken from the base program.
+	 */
+	private static void compile(ReplayProgram program, boolean fromBase, byte op, int person, int container, int actType, double time) {
+		if (fromBase)
+			program.addFromBase();
+		else
+			program.add(op, person, container, actType, time);
+	}
+
 	/**
 	 * Create one infection every day until initialInfections is 0.
 	 */
@@ -584,26 +888,39 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 
 		int numInfections = EpisimUtils.findValidEntry(episimConfig.getInfections_pers_per_day(), 1, date);
 
-		List<EpisimPerson> candidates = this.personMap.values().stream()
-				.filter(p -> district == null || district.equals(p.getAttributes().getAttribute("district")))
-				.filter(p -> p.getDiseaseStatus() == DiseaseStatus.susceptible)
-				.collect(Collectors.toList());
+		if (personStore.susceptibleIndex == null)
+			personStore.susceptibleIndex = new SusceptibleIndex(personMap.values(), personStore.getCapacity());
+
+		SusceptibleIndex index = personStore.susceptibleIndex;
+		List<EpisimPerson> candidates = null;
+		int size = index.size(district);
 
-		if (candidates.size() < numInfections) {
+		if (size < numInfections) {
 			log.warn("Not enough persons match the initial infection requirement, using whole population...");
 			candidates = Lists.newArrayList(this.personMap.values());
+			size = candidates.size();
 		}
 
+		// persons are infected after drawing, so that the candidates don't change while drawing
+		Set<EpisimPerson> infected = new LinkedHashSet<>();
 		while (numInfections > 0 && initialInfectionsLeft > 0) {
-			EpisimPerson randomPerson = candidates.get(rnd.nextInt(candidates.size()));
-			if (randomPerson.getDiseaseStatus() == DiseaseStatus.susceptible) {
-				randomPerson.setDiseaseStatus(now, DiseaseStatus.infectedButNotContagious);
-				log.warn("Person {} has initial infection", randomPerson.getPersonId());
+			int n = rnd.nextInt(size);
+			EpisimPerson randomPerson = candidates != null ? candidates.get(n) : index.get(district, n);
+			if (randomPerson.getDiseaseStatus() == DiseaseStatus.susceptible && infected.add(randomPerson)) {
 				initialInfectionsLeft--;
 				numInfections--;
 			}
 		}
 
+		for (EpisimPerson randomPerson : infected) {
+			randomPerson.setDiseaseStatus(now, DiseaseStatus.infectedButNotContagious);
+			log.warn("Person {} has initial infection", randomPerson.getPersonId());
+		}
+
+		// index is not needed anymore
+		if (initialInfectionsLeft == 0)
+			personStore.susceptibleIndex = null;
+
 	}
 
 	/**
@@ -621,7 +938,7 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 				if (homeId != null) {
 
 					Id<ActivityFacility> facilityId = Id.create(homeId, ActivityFacility.class);
-					EpisimFacility facility = pseudoFacilityMap.computeIfAbsent(facilityId, EpisimFacility::new);
+					EpisimFacility facility = pseudoFacilityMap.computeIfAbsent(facilityId, this::createFacility);
 					EpisimPerson episimPerson = personMap.computeIfAbsent(p.getId(), this::createPerson);
 
 					// Person stays here the whole week
@@ -629,7 +946,7 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 						episimPerson.setFirstFacilityId(facilityId, day);
 					}
 
-					episimPerson.addToTrajectory(new EpisimPerson.Activity("home", episimConfig.selectInfectionParams("home")));
+					episimPerson.addToTrajectory(paramsMap.computeIfAbsent("home", this::createActivityType));
 
 					facility.addPerson(episimPerson, 0);
 
@@ -660,29 +977,75 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 
 		progressionModel.setIteration(iteration);
 		progressionModel.beforeStateUpdates(personMap.values(), iteration);
-		for (EpisimPerson person : personMap.values()) {
-			checkAndHandleEndOfNonCircularTrajectory(person, day);
-			person.resetCurrentPositionInTrajectory(day);
-			progressionModel.updateState(person, iteration);
+
+		// only persons with scheduled transitions or a changed status need a progression update
+		BitSet scheduled = progressionModel.getScheduledPersons(iteration);
+
+		if (episimConfig.getProgressionThreads() > 0) {
+			// trajectories are handled first, because they may infect other persons
+			for (EpisimPerson person : personMap.values()) {
+				checkAndHandleEndOfNonCircularTrajectory(person, day);
+				person.resetCurrentPositionInTrajectory(day);
+				progressionModel.updateContacts(person, iteration);
+			}
+
+			List<EpisimPerson> persons = new ArrayList<>();
+			for (EpisimPerson person : personMap.values()) {
+				if (needsProgression(person, scheduled))
+					persons.add(person);
+			}
+
+			progressionModel.updateStates(persons, iteration, episimConfig.getProgressionThreads());
+			for (EpisimPerson person : persons) {
+				person.clearStatusChanged();
+				progressionModel.afterStateUpdate(person, iteration);
+			}
+
+		} else {
+			for (EpisimPerson person : personMap.values()) {
+				checkAndHandleEndOfNonCircularTrajectory(person, day);
+				person.resetCurrentPositionInTrajectory(day);
+				progressionModel.updateContacts(person, iteration);
+
+				if (needsProgression(person, scheduled)) {
+					progressionModel.updateState(person, iteration);
+					person.clearStatusChanged();
+					progressionModel.afterStateUpdate(person, iteration);
+				}
+			}
 		}
 
 		this.iteration = iteration;
 
 		handleInitialInfections();
 
-		Map<String, EpisimReporting.InfectionReport> reports = reporting.createReports(personMap.values(), iteration);
+		// counters are updated by the persons, they only need to be created once
+		if (personStore.reportCounters == null)
+			personStore.reportCounters = new InfectionReportCounters(personMap.values(), personStore.getCapacity());
+
+		Map<String, EpisimReporting.InfectionReport> reports = reporting.createReports(personStore.reportCounters, iteration);
 		this.report = reports.get("total");
 
 		reporting.reporting(reports, iteration, report.date);
 		reporting.reportTimeUse(restrictions.keySet(), personMap.values(), iteration, report.date);
 
 		ImmutableMap<String, Restriction> im = ImmutableMap.copyOf(this.restrictions);
+		// restrictions are only changed by the policy, before they are passed to the contact model for the day
 		policy.updateRestrictions(report, im);
 		contactModel.setRestrictionsForIteration(iteration, im);
 		reporting.reportRestrictions(restrictions, iteration, report.date);
 
 	}
 
+	/**
+	 * Whether the progression of a person needs to be updated.
+	 *
+	 * @param scheduled see {@link ProgressionModel#getScheduledPersons(int)}
+	 */
+	private static boolean needsProgression(EpisimPerson person, @Nullable BitSet scheduled) {
+		return scheduled == null || person.isStatusChanged() || scheduled.get(person.getPersonId().index());
+	}
+
 	/**
 	 * Handle plans with "holes" in their trajectory.
 	 *
@@ -703,10 +1066,10 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 
 				// index of last activity at previous day
 				int index = person.getEndOfDay(day.minus(1));
-				String actType = person.getTrajectory().get(index).actType;
+				String actType = person.getTrajectoryElement(index).actType;
 
 				contactModel.infectionDynamicsFacility(person, lastFacility, now, actType);
-				double timeSpent = now - lastFacility.getContainerEnteringTime(person.getPersonId());
+				double timeSpent = now - lastFacility.getContainerEnteringTime(person);
 				person.addSpentTime(actType, timeSpent);
 
 				if (iteration > 1 && timeSpent > 86400 && !actType.equals("home")) {
@@ -720,7 +1083,7 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 			} else if (container instanceof EpisimVehicle && this.vehicleMap.containsKey(lastFacilityId)) {
 				EpisimVehicle lastVehicle = this.vehicleMap.get(lastFacilityId);
 				contactModel.infectionDynamicsVehicle(person, lastVehicle, now);
-				person.addSpentTime("pt", now - lastVehicle.getContainerEnteringTime(person.getPersonId()));
+				person.addSpentTime("pt", now - lastVehicle.getContainerEnteringTime(person));
 
 				lastVehicle.removePerson(person);
 				EpisimFacility firstFacility = this.pseudoFacilityMap.get(firstFacilityId);
@@ -783,6 +1146,10 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		initialInfectionsLeft = in.readInt();
 		iteration = in.readInt();
 
+		// status of persons is restored directly, index and counters will be rebuilt when needed
+		personStore.susceptibleIndex = null;
+		personStore.reportCounters = null;
+
 		int r = in.readInt();
 		for (int i = 0; i < r; i++) {
 			String act = readChars(in);
@@ -815,6 +1182,10 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		EpisimVehicle(Id<Vehicle> vehicleId) {
 			super(vehicleId);
 		}
+
+		EpisimVehicle(Id<Vehicle> vehicleId, boolean preserveOrder) {
+			super(vehicleId, preserveOrder);
+		}
 	}
 
 	/**
@@ -824,6 +1195,10 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		EpisimFacility(Id<ActivityFacility> facilityId) {
 			super(facilityId);
 		}
+
+		EpisimFacility(Id<ActivityFacility> facilityId, boolean preserveOrder) {
+			super(facilityId, preserveOrder);
+		}
 	}
 }
 
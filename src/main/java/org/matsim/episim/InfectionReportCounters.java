@@ -0,0 +1,139 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Number of persons by disease status and in quarantine for each district. Districts are numbered in the order
+ * they first occur in the given persons, persons without district are counted as "unknown".
+ * <p>
+ * The counters are updated by {@link EpisimPerson#setDiseaseStatus(double, EpisimPerson.DiseaseStatus, boolean)} and
+ * {@link EpisimPerson#setQuarantineStatus(EpisimPerson.QuarantineStatus, int)}, when they are set in the {@link EpisimPersonStore}.
+ * Updates are atomic, because the disease status may be set concurrently by the progression model.
+ */
+final class InfectionReportCounters {
+
+	private static final int STATUS = EpisimPerson.DiseaseStatus.values().length;
+
+	/**
+	 * Offset of the quarantine counter, after the status counters of a district.
+	 */
+	private static final int QUARANTINE = STATUS;
+	private static final int WIDTH = STATUS + 1;
+
+	private final List<String> names = new ArrayList<>();
+
+	/**
+	 * District of each person by its store slot.
+	 */
+	private final int[] districtOf;
+	private final AtomicIntegerArray counts;
+
+	/**
+	 * Creates the counters for all given persons.
+	 *
+	 * @param capacity capacity of the store all persons belong to
+	 */
+	InfectionReportCounters(Collection<EpisimPerson> persons, int capacity) {
+
+		districtOf = new int[capacity];
+
+		Object2IntMap<String> index = new Object2IntOpenHashMap<>();
+		index.defaultReturnValue(-1);
+
+		for (EpisimPerson p : persons) {
+			String name = p.getDistrict() == null ? "unknown" : p.getDistrict();
+			int district = index.getInt(name);
+			if (district == -1) {
+				district = names.size();
+				names.add(name);
+				index.put(name, district);
+			}
+
+			districtOf[p.getSlot()] = district;
+		}
+
+		counts = new AtomicIntegerArray(names.size() * WIDTH);
+		for (EpisimPerson p : persons) {
+			int offset = districtOf[p.getSlot()] * WIDTH;
+			counts.incrementAndGet(offset + p.getDiseaseStatus().ordinal());
+			if (isInQuarantine(p.getQuarantineStatus()))
+				counts.incrementAndGet(offset + QUARANTINE);
+		}
+	}
+
+	private static boolean isInQuarantine(EpisimPerson.QuarantineStatus status) {
+		return status != EpisimPerson.QuarantineStatus.no;
+	}
+
+	/**
+	 * Updates the disease status of the person in {@code slot}.
+	 */
+	void updateDiseaseStatus(int slot, EpisimPerson.DiseaseStatus from, EpisimPerson.DiseaseStatus to) {
+		if (from == to)
+			return;
+
+		int offset = districtOf[slot] * WIDTH;
+		counts.decrementAndGet(offset + from.ordinal());
+		counts.incrementAndGet(offset + to.ordinal());
+	}
+
+	/**
+	 * Updates the quarantine status of the person in {@code slot}.
+	 */
+	void updateQuarantineStatus(int slot, EpisimPerson.QuarantineStatus from, EpisimPerson.QuarantineStatus to) {
+		boolean before = isInQuarantine(from);
+		boolean after = isInQuarantine(to);
+		if (before == after)
+			return;
+
+		counts.addAndGet(districtOf[slot] * WIDTH + QUARANTINE, after ? 1 : -1);
+	}
+
+	int getNumberOfDistricts() {
+		return names.size();
+	}
+
+	String getName(int district) {
+		return names.get(district);
+	}
+
+	/**
+	 * Number of persons with {@code status} in a district.
+	 */
+	int get(int district, EpisimPerson.DiseaseStatus status) {
+		return counts.get(district * WIDTH + status.ordinal());
+	}
+
+	/**
+	 * Number of persons in quarantine in a district, regardless of the kind of quarantine.
+	 */
+	int getInQuarantine(int district) {
+		return counts.get(district * WIDTH + QUARANTINE);
+	}
+}
@@ -0,0 +1,258 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Memory efficient list of events, see {@link EpisimConfigGroup.EventStorage#lean}.
+ * <p>
+ * Activity and vehicle events are stored as primitive columns of time, event kind and indices of ids and activity types.
+ * The MATSim events are only created when they are accessed, coordinates of activity start events are looked up from the network.
+ * All other events are stored unchanged.
+ */
+final class LeanEventList extends AbstractList<Event> implements RandomAccess {
+
+	private static final byte OTHER = 0;
+	private static final byte ACTIVITY_START = 1;
+	private static final byte ACTIVITY_END = 2;
+	private static final byte ENTERS_VEHICLE = 3;
+	private static final byte LEAVES_VEHICLE = 4;
+
+	@Nullable
+	private final Network network;
+
+	private byte[] kinds = new byte[1024];
+	private double[] times = new double[1024];
+	private int[] persons = new int[1024];
+
+	/**
+	 * Index of the facility or vehicle id.
+	 */
+	private int[] containers = new int[1024];
+	private int[] links = new int[1024];
+	private int[] actTypes = new int[1024];
+
+	/**
+	 * Activity types, which are canonicalized.
+	 */
+	private final List<String> actTypeTable = new ArrayList<>();
+	private final Object2IntMap<String> actTypeIndex = new Object2IntOpenHashMap<>();
+
+	/**
+	 * Events of other types, by position.
+	 */
+	private final Int2ObjectMap<Event> others = new Int2ObjectOpenHashMap<>();
+
+	private int size = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param network network for coordinate lookup, may be null.
+	 */
+	LeanEventList(@Nullable Network network) {
+		this.network = network;
+		actTypeIndex.defaultReturnValue(-1);
+	}
+
+	@Override
+	public boolean add(Event event) {
+
+		ensureCapacity();
+		times[size] = event.getTime();
+
+		if (event instanceof ActivityStartEvent) {
+			ActivityStartEvent e = (ActivityStartEvent) event;
+			set(ACTIVITY_START, e.getPersonId(), e.getFacilityId(), e.getLinkId(), actTypeIndex(e.getActType()));
+		} else if (event instanceof ActivityEndEvent) {
+			ActivityEndEvent e = (ActivityEndEvent) event;
+			set(ACTIVITY_END, e.getPersonId(), e.getFacilityId(), e.getLinkId(), actTypeIndex(e.getActType()));
+		} else if (event instanceof PersonEntersVehicleEvent) {
+			PersonEntersVehicleEvent e = (PersonEntersVehicleEvent) event;
+			set(ENTERS_VEHICLE, e.getPersonId(), e.getVehicleId(), null, -1);
+		} else if (event instanceof PersonLeavesVehicleEvent) {
+			PersonLeavesVehicleEvent e = (PersonLeavesVehicleEvent) event;
+			set(LEAVES_VEHICLE, e.getPersonId(), e.getVehicleId(), null, -1);
+		} else {
+			set(OTHER, null, null, null, -1);
+			others.put(size, event);
+		}
+
+		size++;
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * Adds the event at {@code index} of another list, without creating the event.
+	 */
+	void add(LeanEventList other, int index) {
+
+		ensureCapacity();
+
+		kinds[size] = other.kinds[index];
+		times[size] = other.times[index];
+		persons[size] = other.persons[index];
+		containers[size] = other.containers[index];
+		links[size] = other.links[index];
+		actTypes[size] = other.actTypes[index] == -1 ? -1 : actTypeIndex(other.getActType(index));
+
+		if (kinds[size] == OTHER)
+			others.put(size, other.others.get(index));
+
+		size++;
+		modCount++;
+	}
+
+	private void ensureCapacity() {
+		if (size == kinds.length) {
+			int capacity = size + (size >> 1);
+			kinds = Arrays.copyOf(kinds, capacity);
+			times = Arrays.copyOf(times, capacity);
+			persons = Arrays.copyOf(persons, capacity);
+			containers = Arrays.copyOf(containers, capacity);
+			links = Arrays.copyOf(links, capacity);
+			actTypes = Arrays.copyOf(actTypes, capacity);
+		}
+	}
+
+	private void set(byte kind, @Nullable Id<Person> person, @Nullable Id<?> container, @Nullable Id<Link> link, int actType) {
+		kinds[size] = kind;
+		persons[size] = person == null ? -1 : person.index();
+		containers[size] = container == null ? -1 : container.index();
+		links[size] = link == null ? -1 : link.index();
+		actTypes[size] = actType;
+	}
+
+	private int actTypeIndex(String actType) {
+		int i = actTypeIndex.getInt(actType);
+		if (i == -1) {
+			i = actTypeTable.size();
+			actTypeTable.add(actType.intern());
+			actTypeIndex.put(actTypeTable.get(i), i);
+		}
+		return i;
+	}
+
+	/**
+	 * Release unused capacity, after all events have been added.
+	 */
+	void trim() {
+		kinds = Arrays.copyOf(kinds, size);
+		times = Arrays.copyOf(times, size);
+		persons = Arrays.copyOf(persons, size);
+		containers = Arrays.copyOf(containers, size);
+		links = Arrays.copyOf(links, size);
+		actTypes = Arrays.copyOf(actTypes, size);
+	}
+
+	@Override
+	public Event get(int index) {
+
+		Objects.checkIndex(index, size);
+
+		double time = times[index];
+		Id<Person> person = id(persons[index], Person.class);
+
+		switch (kinds[index]) {
+			case ACTIVITY_START:
+				Id<Link> linkId = id(links[index], Link.class);
+				return new ActivityStartEvent(time, person, linkId, id(containers[index], ActivityFacility.class),
+						actTypeTable.get(actTypes[index]), getCoord(linkId));
+			case ACTIVITY_END:
+				return new ActivityEndEvent(time, person, id(links[index], Link.class), id(containers[index], ActivityFacility.class),
+						actTypeTable.get(actTypes[index]));
+			case ENTERS_VEHICLE:
+				return new PersonEntersVehicleEvent(time, person, id(containers[index], Vehicle.class));
+			case LEAVES_VEHICLE:
+				return new PersonLeavesVehicleEvent(time, person, id(containers[index], Vehicle.class));
+			default:
+				return others.get(index);
+		}
+	}
+
+	/**
+	 * Network used for coordinate lookup.
+	 */
+	@Nullable
+	Network getNetwork() {
+		return network;
+	}
+
+	/**
+	 * Index of the person id of an event, or -1 for events that are not activity or vehicle events.
+	 */
+	int getPersonIndex(int index) {
+		return persons[index];
+	}
+
+	/**
+	 * Whether two activity or vehicle events are equal in all stored attributes. Other events are never considered equal.
+	 */
+	boolean isSameEvent(int index, LeanEventList other, int otherIndex) {
+		if (kinds[index] == OTHER || kinds[index] != other.kinds[otherIndex])
+			return false;
+
+		// activity types are canonical
+		return times[index] == other.times[otherIndex] && persons[index] == other.persons[otherIndex]
+				&& containers[index] == other.containers[otherIndex] && links[index] == other.links[otherIndex]
+				&& getActType(index) == other.getActType(otherIndex);
+	}
+
+	@Nullable
+	private String getActType(int index) {
+		return actTypes[index] == -1 ? null : actTypeTable.get(actTypes[index]);
+	}
+
+	@Nullable
+	private Coord getCoord(@Nullable Id<Link> linkId) {
+		if (network == null || linkId == null)
+			return null;
+
+		Link link = network.getLinks().get(linkId);
+		return link != null ? link.getToNode().getCoord() : null;
+	}
+
+	@Nullable
+	private static <T> Id<T> id(int index, Class<T> type) {
+		return index == -1 ? null : Id.get(index, type);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,371 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import com.google.common.hash.HashCode;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.episim.model.InfectionModelWithViralLoad;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Binary cache of the population, containing the person ids and only the attributes used by episim.
+ * <p>
+ * The cache is stored next to the population file and contains a header with the source path and a content hash of the input,
+ * so it is only used as long as the population has not been changed. Attributes are stored column wise, see {@link #isEpisimAttribute(String)}.
+ * Plans are not stored. Caches are created with the {@code createPopulationCache} scenario creation tool.
+ */
+public final class PopulationCache {
+
+	/**
+	 * Suffix appended to the population path.
+	 */
+	public static final String SUFFIX = ".episim-cache";
+
+	/**
+	 * Attributes that are stored in the cache.
+	 */
+	public static final Set<String> ATTRIBUTES = Set.of("homeId", "district", "age", "homeX", "homeY",
+			InfectionModelWithViralLoad.VIRAL_LOAD, InfectionModelWithViralLoad.SUSCEPTIBILITY);
+
+	private static final Logger log = LogManager.getLogger(PopulationCache.class);
+
+	private static final int MAGIC = 0x45505043;
+	private static final int VERSION = 1;
+
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte DOUBLE = 3;
+
+	private PopulationCache() {
+	}
+
+	/**
+	 * Path of the cache belonging to a population file.
+	 */
+	public static Path getCachePath(Path population) {
+		return population.resolveSibling(population.getFileName() + SUFFIX);
+	}
+
+	/**
+	 * Whether an attribute is needed by episim. This includes all attributes containing "age", which are read by the age dependent models.
+	 */
+	public static boolean isEpisimAttribute(String key) {
+		return ATTRIBUTES.contains(key) || key.contains("age");
+	}
+
+	/**
+	 * Loads the scenario and reads the population from its cache, if a valid one exists. Otherwise the scenario is loaded as usual.
+	 */
+	public static Scenario loadScenario(Config config) {
+
+		Path input = getPopulationPath(config);
+		if (input == null || !Files.isRegularFile(getCachePath(input)))
+			return ScenarioUtils.loadScenario(config);
+
+		Path cache = getCachePath(input);
+
+		try {
+			if (!isValid(cache, input, EventCache.hash(input))) {
+				log.warn("Population cache {} is outdated, reading {} instead", cache, input);
+				return ScenarioUtils.loadScenario(config);
+			}
+		} catch (IOException e) {
+			log.warn("Could not hash population {}, population cache will not be used", input, e);
+			return ScenarioUtils.loadScenario(config);
+		}
+
+		String plans = config.plans().getInputFile();
+		config.plans().setInputFile(null);
+
+		Scenario scenario;
+		try {
+			scenario = ScenarioUtils.loadScenario(config);
+		} finally {
+			config.plans().setInputFile(plans);
+		}
+
+		log.info("Reading population from cache {}", cache);
+
+		try {
+			read(cache, scenario.getPopulation());
+		} catch (IOException e) {
+			log.warn("Could not read population cache {}, parsing input instead", cache, e);
+			return ScenarioUtils.loadScenario(config);
+		}
+
+		return scenario;
+	}
+
+	/**
+	 * Local path of the population file, or null if there is none.
+	 */
+	@Nullable
+	private static Path getPopulationPath(Config config) {
+
+		if (config.plans().getInputFile() == null)
+			return null;
+
+		URL url = config.plans().getInputFileURL(config.getContext());
+		if (url == null || !"file".equals(url.getProtocol()))
+			return null;
+
+		try {
+			return Path.of(url.toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether a valid cache exists for the population. The cache is only valid if path and content hash match.
+	 */
+	static boolean isValid(Path cache, Path input, HashCode hash) {
+
+		if (!Files.isRegularFile(cache))
+			return false;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cache)))) {
+			return readHeader(in, input, hash);
+		} catch (IOException e) {
+			log.warn("Could not read population cache {}", cache, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Creates the cache for the population file {@code input}, which must contain the persons of {@code population}.
+	 *
+	 * @return path of the written cache
+	 */
+	public static Path create(Path input, Population population) throws IOException {
+		Path cache = getCachePath(input);
+		write(cache, input, EventCache.hash(input), population);
+		return cache;
+	}
+
+	/**
+	 * Writes the ids and episim attributes of all persons into a new cache file.
+	 */
+	static void write(Path cache, Path input, HashCode hash, Population population) throws IOException {
+
+		List<Person> persons = new ArrayList<>(population.getPersons().values());
+
+		// columns in order of first occurrence
+		Map<String, Byte> columns = new LinkedHashMap<>();
+		Object2IntMap<String> skipped = new Object2IntOpenHashMap<>();
+
+		for (Person person : persons) {
+			for (Map.Entry<String, Object> attr : person.getAttributes().getAsMap().entrySet()) {
+				if (!isEpisimAttribute(attr.getKey()))
+					continue;
+
+				byte type = type(attr.getValue());
+				if (type == 0)
+					skipped.mergeInt(attr.getKey(), 1, Integer::sum);
+				else if (columns.getOrDefault(attr.getKey(), type) != type)
+					throw new IllegalArgumentException("Attribute " + attr.getKey() + " has values of different types.");
+				else
+					columns.put(attr.getKey(), type);
+			}
+		}
+
+		if (!skipped.isEmpty())
+			log.warn("Attributes with unsupported types are not cached: {}", skipped);
+
+		Path tmp = cache.resolveSibling(cache.getFileName() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 20))) {
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(normalize(input));
+			byte[] bytes = hash.asBytes();
+			out.writeInt(bytes.length);
+			out.write(bytes);
+
+			out.writeInt(persons.size());
+			for (Person person : persons) {
+				out.writeUTF(person.getId().toString());
+			}
+
+			out.writeInt(columns.size());
+			for (Map.Entry<String, Byte> column : columns.entrySet()) {
+				out.writeUTF(column.getKey());
+				out.writeByte(column.getValue());
+				writeColumn(out, column.getKey(), column.getValue(), persons);
+			}
+		}
+
+		Files.move(tmp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeColumn(DataOutput out, String key, byte type, List<Person> persons) throws IOException {
+
+		BitSet present = new BitSet(persons.size());
+		for (int i = 0; i < persons.size(); i++) {
+			if (persons.get(i).getAttributes().getAttribute(key) != null)
+				present.set(i);
+		}
+
+		long[] words = present.toLongArray();
+		out.writeInt(words.length);
+		for (long w : words) {
+			out.writeLong(w);
+		}
+
+		if (type == STRING) {
+			// dictionary encoded, there are only few distinct values
+			Object2IntMap<String> index = new Object2IntOpenHashMap<>();
+			List<String> values = new ArrayList<>();
+			int[] column = new int[persons.size()];
+
+			for (int i = 0; i < persons.size(); i++) {
+				Object value = persons.get(i).getAttributes().getAttribute(key);
+				column[i] = value == null ? -1 : index.computeIfAbsent((String) value, (String k) -> {
+					values.add(k);
+					return values.size() - 1;
+				});
+			}
+
+			out.writeInt(values.size());
+			for (String v : values) {
+				out.writeUTF(v);
+			}
+			for (int v : column) {
+				out.writeInt(v);
+			}
+
+		} else {
+			for (Person person : persons) {
+				Object value = person.getAttributes().getAttribute(key);
+				if (type == INTEGER)
+					out.writeInt(value == null ? 0 : (Integer) value);
+				else
+					out.writeDouble(value == null ? 0 : (Double) value);
+			}
+		}
+	}
+
+	/**
+	 * Reads all persons from a cache file and adds them to the {@code population}.
+	 */
+	static void read(Path cache, Population population) throws IOException {
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cache), 1 << 20))) {
+
+			readHeader(in, null, null);
+
+			int n = in.readInt();
+			Person[] persons = new Person[n];
+			for (int i = 0; i < n; i++) {
+				persons[i] = population.getFactory().createPerson(Id.createPersonId(in.readUTF()));
+			}
+
+			int columns = in.readInt();
+			for (int c = 0; c < columns; c++) {
+				String key = in.readUTF().intern();
+				byte type = in.readByte();
+
+				long[] words = new long[in.readInt()];
+				for (int i = 0; i < words.length; i++) {
+					words[i] = in.readLong();
+				}
+				BitSet present = BitSet.valueOf(words);
+
+				if (type == STRING) {
+					String[] values = new String[in.readInt()];
+					for (int i = 0; i < values.length; i++) {
+						values[i] = in.readUTF().intern();
+					}
+					for (int i = 0; i < n; i++) {
+						int v = in.readInt();
+						if (present.get(i))
+							persons[i].getAttributes().putAttribute(key, values[v]);
+					}
+				} else if (type == INTEGER) {
+					for (int i = 0; i < n; i++) {
+						int v = in.readInt();
+						if (present.get(i))
+							persons[i].getAttributes().putAttribute(key, v);
+					}
+				} else if (type == DOUBLE) {
+					for (int i = 0; i < n; i++) {
+						double v = in.readDouble();
+						if (present.get(i))
+							persons[i].getAttributes().putAttribute(key, v);
+					}
+				} else
+					throw new IOException("Unknown attribute type in cache: " + type);
+			}
+
+			for (Person person : persons) {
+				population.addPerson(person);
+			}
+		}
+	}
+
+	/**
+	 * Reads the header and checks whether it matches the input, if given.
+	 */
+	private static boolean readHeader(DataInput in, @Nullable Path input, @Nullable HashCode hash) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a population cache");
+		if (in.readInt() != VERSION)
+			throw new IOException("Unsupported population cache version");
+
+		String source = in.readUTF();
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+
+		return input == null || (source.equals(normalize(input)) && HashCode.fromBytes(bytes).equals(hash));
+	}
+
+	/**
+	 * Type of an attribute value, or 0 if it can not be stored.
+	 */
+	private static byte type(Object value) {
+		if (value instanceof String) return STRING;
+		else if (value instanceof Integer) return INTEGER;
+		else if (value instanceof Double) return DOUBLE;
+		return 0;
+	}
+
+	private static String normalize(Path input) {
+		return input.toAbsolutePath().normalize().toString();
+	}
+}
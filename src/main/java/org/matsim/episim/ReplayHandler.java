@@ -20,22 +20,43 @@
  */
 package org.matsim.episim;
 
+import com.google.common.hash.HashCode;
 import com.google.inject.Inject;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.events.ActivityEndEvent;
 import org.matsim.api.core.v01.events.ActivityStartEvent;
 import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
+import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
 import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.api.experimental.events.TransitDriverStartsEvent;
+import org.matsim.core.api.internal.HasPersonId;
+import org.matsim.core.events.EventsReaderXMLv1;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.utils.io.MatsimXmlParser;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.DayOfWeek;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 
 /**
@@ -48,6 +69,21 @@ public final class ReplayHandler {
 	private final Scenario scenario;
 	private final Map<DayOfWeek, List<Event>> events = new EnumMap<>(DayOfWeek.class);
 
+	/**
+	 * Filter for the persons and activity types of these events.
+	 */
+	private final EventFilter filter;
+
+	/**
+	 * Whether the events are used by several simulations, see {@link #setShared(boolean)}.
+	 */
+	private boolean shared = false;
+
+	/**
+	 * Whether the events have been released.
+	 */
+	private boolean released = false;
+
 	/**
 	 * Constructor with optional scenario.
 	 */
@@ -55,14 +91,16 @@ public final class ReplayHandler {
 	public ReplayHandler(EpisimConfigGroup config, @Nullable Scenario scenario) {
 		this.scenario = scenario;
 
-		for (EpisimConfigGroup.EventFileParams input : config.getInputEventsFiles()) {
+		List<EpisimConfigGroup.EventFileParams> inputs = new ArrayList<>(config.getInputEventsFiles());
+		List<List<Event>> read = readAllEvents(config, inputs);
+
+		if (config.getEventStorage() == EpisimConfigGroup.EventStorage.delta)
+			encodeDeltas(inputs, read);
 
-			List<Event> eventsForDay = new ArrayList<>();
+		for (int i = 0; i < inputs.size(); i++) {
 
-			EventsManager manager = EventsUtils.createEventsManager();
-			manager.addHandler(new EventReader(eventsForDay));
-			EventsUtils.readEvents(manager, input.getPath());
-			manager.finishProcessing();
+			EpisimConfigGroup.EventFileParams input = inputs.get(i);
+			List<Event> eventsForDay = read.get(i);
 
 			log.info("Read in {} events for {}, with time range {} - {}", eventsForDay.size(), input.getDays(), eventsForDay.get(0).getTime(),
 					eventsForDay.get(eventsForDay.size() - 1).getTime());
@@ -79,6 +117,244 @@ public final class ReplayHandler {
 			EnumSet<DayOfWeek> missing = EnumSet.complementOf(EnumSet.copyOf(events.keySet()));
 			throw new IllegalStateException("Event definition missing for days: " + missing);
 		}
+
+		filter = new EventFilter(events.values());
+	}
+
+	/**
+	 * Reads the events of all inputs, multiple files are parsed concurrently. The result has the same order as {@code inputs}.
+	 * <p>
+	 * Each file is read into its own list and activity types are interned, so the events for each day are the same as with sequential
+	 * reading. The index of person ids, which determines the order of persons in the simulation, depends on the order in which ids are created.
+	 * Concurrent readers may therefore only use persons of the population, which already have their ids, and persons that are ignored by the
+	 * {@link InfectionEventHandler}. As soon as a reader encounters another person, before its id is created, all readers are aborted and
+	 * the files are read sequentially, which creates the ids of these persons in the order of the inputs.
+	 */
+	private List<List<Event>> readAllEvents(EpisimConfigGroup config, List<EpisimConfigGroup.EventFileParams> inputs) {
+
+		int threads = Math.min(inputs.size(), Runtime.getRuntime().availableProcessors());
+		boolean populationLoaded = scenario != null && !scenario.getPopulation().getPersons().isEmpty();
+
+		if (threads > 1 && populationLoaded) {
+			try {
+				return readConcurrently(config, inputs, threads);
+			} catch (UnknownPersonException e) {
+				log.info("Person {} of the events is not in the population, reading event files sequentially", e.getMessage());
+			}
+		}
+
+		List<List<Event>> read = new ArrayList<>();
+		for (EpisimConfigGroup.EventFileParams input : inputs) {
+			read.add(readEvents(config, input.getPath(), null));
+		}
+		return read;
+	}
+
+	/**
+	 * Reads the events of all inputs concurrently, only persons of the population and ignored persons are allowed.
+	 *
+	 * @throws UnknownPersonException if the events contain any other person
+	 */
+	private List<List<Event>> readConcurrently(EpisimConfigGroup config, List<EpisimConfigGroup.EventFileParams> inputs, int threads) {
+
+		log.info("Reading {} event files using {} threads", inputs.size(), threads);
+
+		Map<String, Id<Person>> population = new HashMap<>();
+		for (Id<Person> id : scenario.getPopulation().getPersons().keySet()) {
+			population.put(id.toString(), id);
+		}
+
+		// the first unknown person stops all readers
+		AtomicReference<String> unknown = new AtomicReference<>();
+		Function<String, Id<Person>> knownPersons = s -> {
+			if (unknown.get() != null)
+				throw new UnknownPersonException(unknown.get());
+
+			Id<Person> id = population.get(s);
+			if (id != null)
+				return id;
+
+			// never part of the simulation, the order of these ids does not matter
+			if (!EventFilter.handlesPerson(s))
+				return Id.createPersonId(s);
+
+			unknown.compareAndSet(null, s);
+			throw new UnknownPersonException(unknown.get());
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<CompletableFuture<List<Event>>> futures = new ArrayList<>();
+			for (EpisimConfigGroup.EventFileParams input : inputs) {
+				futures.add(CompletableFuture.supplyAsync(() -> readEvents(config, input.getPath(), knownPersons), executor));
+			}
+
+			// wait for all readers, so that none is still running when the files are read again
+			RuntimeException error = null;
+			List<List<Event>> read = new ArrayList<>();
+			for (CompletableFuture<List<Event>> f : futures) {
+				try {
+					read.add(f.join());
+				} catch (CompletionException e) {
+					if (error == null)
+						error = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+				}
+			}
+
+			// the parser may wrap the exception
+			if (unknown.get() != null)
+				throw new UnknownPersonException(unknown.get());
+
+			if (error != null)
+				throw error;
+
+			return read;
+
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads all events of one input file, using the binary {@link EventCache} if enabled or needed for {@link EpisimConfigGroup.EventStorage#mapped}.
+	 *
+	 * @param knownPersons resolves the allowed person ids, or null if all persons are allowed
+	 */
+	private List<Event> readEvents(EpisimConfigGroup config, String path, @Nullable Function<String, Id<Person>> knownPersons) {
+
+		List<Event> eventsForDay = createEventList(config);
+
+		// all events are needed when they are written again
+		boolean filter = config.getFilterInputEvents() && config.getWriteEvents() != EpisimConfigGroup.WriteEvents.all;
+		EventReader reader = new EventReader(eventsForDay, filter);
+
+		boolean mapped = config.getEventStorage() == EpisimConfigGroup.EventStorage.mapped && config.getWriteEvents() != EpisimConfigGroup.WriteEvents.all;
+		if (mapped && !EventCache.isCacheable(path))
+			log.warn("Input {} can not be memory mapped, storing events on heap", path);
+
+		// the cache only contains events relevant for episim, so it can not be used when all events are written
+		if (!(config.getCacheInputEvents() || mapped) || config.getWriteEvents() == EpisimConfigGroup.WriteEvents.all || !EventCache.isCacheable(path)) {
+			parseEvents(path, reader, knownPersons);
+			return trim(eventsForDay);
+		}
+
+		Path cache = EventCache.getCachePath(path, filter);
+		HashCode hash;
+		try {
+			hash = EventCache.hash(Path.of(path));
+		} catch (IOException e) {
+			log.warn("Could not hash input {}, event cache will not be used", path, e);
+			parseEvents(path, reader, knownPersons);
+			return trim(eventsForDay);
+		}
+
+		if (EventCache.isValid(cache, path, hash)) {
+			log.info("Reading events from cache {}", cache);
+			try {
+				if (mapped)
+					return EventCache.map(cache, scenario != null ? scenario.getNetwork() : null, personIds(knownPersons));
+
+				EventCache.read(cache, reader::handleEvent, personIds(knownPersons));
+				return trim(eventsForDay);
+			} catch (IOException e) {
+				log.warn("Could not read event cache {}, parsing input instead", cache, e);
+				eventsForDay = createEventList(config);
+				reader = new EventReader(eventsForDay, filter);
+			}
+		}
+
+		parseEvents(path, reader, knownPersons);
+
+		log.info("Writing event cache {}", cache);
+		try {
+			EventCache.write(cache, path, hash, eventsForDay);
+
+			if (mapped)
+				return EventCache.map(cache, scenario != null ? scenario.getNetwork() : null, personIds(knownPersons));
+
+		} catch (IOException e) {
+			log.warn("Could not write event cache {}", cache, e);
+		}
+
+		return trim(eventsForDay);
+	}
+
+	/**
+	 * Creates the list holding the events of one file, depending on {@link EpisimConfigGroup#getEventStorage()}.
+	 */
+	private List<Event> createEventList(EpisimConfigGroup config) {
+		// written events need all their attributes
+		if (config.getEventStorage() != EpisimConfigGroup.EventStorage.full && config.getWriteEvents() != EpisimConfigGroup.WriteEvents.all)
+			return new LeanEventList(scenario != null ? scenario.getNetwork() : null);
+
+		return new ArrayList<>();
+	}
+
+	/**
+	 * Replaces the events of all inputs with their difference to the input with the most days.
+	 */
+	private void encodeDeltas(List<EpisimConfigGroup.EventFileParams> inputs, List<List<Event>> read) {
+
+		if (!read.stream().allMatch(l -> l instanceof LeanEventList))
+			return;
+
+		int base = 0;
+		for (int i = 1; i < inputs.size(); i++) {
+			if (inputs.get(i).getDays().size() > inputs.get(base).getDays().size())
+				base = i;
+		}
+
+		LeanEventList baseEvents = (LeanEventList) read.get(base);
+
+		for (int i = 0; i < inputs.size(); i++) {
+			if (i == base)
+				continue;
+
+			DeltaEventList delta = DeltaEventList.create(baseEvents, (LeanEventList) read.get(i));
+			log.info("Storing events for {} as delta to {}: {} of {} events ({} changed persons)", inputs.get(i).getDays(),
+					inputs.get(base).getDays(), delta.getDeltaSize(), delta.size(), delta.getChangedPersons().cardinality());
+
+			read.set(i, delta);
+		}
+	}
+
+	/**
+	 * Releases unused memory after all events have been read.
+	 */
+	private static List<Event> trim(List<Event> events) {
+		if (events instanceof LeanEventList)
+			((LeanEventList) events).trim();
+
+		return events;
+	}
+
+	/**
+	 * Resolves person ids, creating them if all persons are allowed.
+	 */
+	private static Function<String, Id<Person>> personIds(@Nullable Function<String, Id<Person>> knownPersons) {
+		return knownPersons != null ? knownPersons : Id::createPersonId;
+	}
+
+	/**
+	 * Parses the events from xml.
+	 *
+	 * @param knownPersons resolves the allowed person ids, or null if all persons are allowed
+	 */
+	private void parseEvents(String path, EventReader reader, @Nullable Function<String, Id<Person>> knownPersons) {
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler(reader);
+
+		if (knownPersons == null)
+			EventsUtils.readEvents(manager, path);
+		else
+			new CheckedEventsReader(manager, knownPersons).readFile(path);
+
+		manager.finishProcessing();
+
+		if (reader.filter) {
+			log.info("Discarded {} events (approx. {} MB of xml) from {}: {}", reader.discardedEvents,
+					reader.discardedBytes / (1024 * 1024), path, reader.discarded);
+		}
 	}
 
 	/**
@@ -86,6 +362,7 @@ public final class ReplayHandler {
 	 */
 	public void replayEvents(final EventsManager manager, DayOfWeek day) {
 
+		checkNotReleased();
 		for (final Event e : events.get(day)) {
 			manager.processEvent(e);
 		}
@@ -95,9 +372,93 @@ public final class ReplayHandler {
 	 * All available events.
 	 */
 	public Map<DayOfWeek, List<Event>> getEvents() {
+		checkNotReleased();
 		return new EnumMap<>(events);
 	}
 
+	/**
+	 * Filter that decides which of the events are handled, precomputed for the persons and activity types of the events.
+	 * It stays valid after the events have been released.
+	 */
+	public EventFilter getEventFilter() {
+		return filter;
+	}
+
+	/**
+	 * Marks the events as used by several simulations, e.g. by parallel runs with the same input. Shared events are never released.
+	 */
+	public void setShared(boolean shared) {
+		this.shared = shared;
+	}
+
+	/**
+	 * Releases the events, when they are not needed anymore. This is the case once the {@link InfectionEventHandler} has been initialized
+	 * and replays its own compiled events, i.e. unless all events are written. Afterwards events can neither be replayed nor retrieved.
+	 * Has no effect if the events are shared.
+	 */
+	public void releaseEvents() {
+		if (shared)
+			return;
+
+		events.clear();
+		released = true;
+	}
+
+	private void checkNotReleased() {
+		if (released)
+			throw new IllegalStateException("Events have already been released.");
+	}
+
+	/**
+	 * Thrown when a person is not allowed while reading events, the message is the person id.
+	 */
+	private static final class UnknownPersonException extends RuntimeException {
+		private UnknownPersonException(String person) {
+			super(person, null, false, false);
+		}
+	}
+
+	/**
+	 * Events reader that resolves the person of each event before the event is created, so that no other person ids are created.
+	 */
+	private static final class CheckedEventsReader extends MatsimXmlParser {
+
+		/**
+		 * Attributes that are read as person ids.
+		 */
+		private static final String[] PERSON_ATTRIBUTES = {HasPersonId.ATTRIBUTE_PERSON, TransitDriverStartsEvent.ATTRIBUTE_DRIVER_ID};
+
+		private final EventsReaderXMLv1 delegate;
+		private final Function<String, Id<Person>> knownPersons;
+
+		private CheckedEventsReader(EventsManager events, Function<String, Id<Person>> knownPersons) {
+			this.delegate = new EventsReaderXMLv1(events);
+			this.knownPersons = knownPersons;
+			this.setValidating(false);
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			delegate.characters(ch, start, length);
+		}
+
+		@Override
+		public void startTag(String name, Attributes atts, Stack<String> context) {
+			for (String attr : PERSON_ATTRIBUTES) {
+				String person = atts.getValue(attr);
+				if (person != null)
+					knownPersons.apply(person);
+			}
+
+			delegate.startTag(name, atts, context);
+		}
+
+		@Override
+		public void endTag(String name, String content, Stack<String> context) {
+			delegate.endTag(name, content, context);
+		}
+	}
+
 	/**
 	 * Helper class to read events one time.
 	 */
@@ -105,13 +466,58 @@ public final class ReplayHandler {
 
 		private final List<Event> events;
 
-		private EventReader(List<Event> events) {
+		/**
+		 * Whether irrelevant events should be discarded.
+		 */
+		private final boolean filter;
+
+		/**
+		 * Number of discarded events per type.
+		 */
+		private final Object2IntMap<String> discarded = new Object2IntOpenHashMap<>();
+
+		/**
+		 * Total number of discarded events.
+		 */
+		private long discardedEvents = 0;
+
+		/**
+		 * Estimated size of discarded events in the xml file.
+		 */
+		private long discardedBytes = 0;
+
+		/**
+		 * Lean lists compute coordinates on demand and canonicalize activity types themselves.
+		 */
+		private final boolean lean;
+
+		private EventReader(List<Event> events, boolean filter) {
 			this.events = events;
+			this.filter = filter;
+			this.lean = events instanceof LeanEventList;
 		}
 
 		@Override
 		public void handleEvent(Event event) {
 
+			if (filter && !isRelevant(event)) {
+				discarded.mergeInt(event.getEventType(), 1, Integer::sum);
+				discardedEvents++;
+
+				// <event ... />
+				discardedBytes += 12;
+				for (Map.Entry<String, String> attr : event.getAttributes().entrySet()) {
+					discardedBytes += attr.getKey().length() + attr.getValue().length() + 4;
+				}
+
+				return;
+			}
+
+			if (lean) {
+				events.add(event);
+				return;
+			}
+
 			// Add coordinate information if not present
 			if (event instanceof ActivityStartEvent) {
 				ActivityStartEvent e = (ActivityStartEvent) event;
@@ -129,6 +535,20 @@ public final class ReplayHandler {
 
 			events.add(event);
 		}
+
+		/**
+		 * Whether an event would be processed by the {@link InfectionEventHandler}.
+		 */
+		private boolean isRelevant(Event event) {
+			if (event instanceof ActivityStartEvent)
+				return InfectionEventHandler.shouldHandleActivityEvent((HasPersonId) event, ((ActivityStartEvent) event).getActType());
+			if (event instanceof ActivityEndEvent)
+				return InfectionEventHandler.shouldHandleActivityEvent((HasPersonId) event, ((ActivityEndEvent) event).getActType());
+			if (event instanceof PersonEntersVehicleEvent || event instanceof PersonLeavesVehicleEvent)
+				return InfectionEventHandler.shouldHandlePersonEvent((HasPersonId) event);
+
+			return false;
+		}
 	}
 
 }
@@ -0,0 +1,317 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Compiled representation of the events of one day, which is executed by {@link InfectionEventHandler#replay(java.time.DayOfWeek)}
+ * without dispatching each event through the events manager.
+ * <p>
+ * Every instruction consists of an operation, the index of the person, the index of the container, the index of the activity type
+ * and the uncorrected time of the original event. The indices refer to the tables of the {@link InfectionEventHandler}.
+ * Only events that are actually processed by the handler are contained.
+ * <p>
+ * Programs of days stored as {@link DeltaEventList} only contain the instructions of the delta, together with their position.
+ * All other positions are filled with the instructions of the base program, skipping persons that are changed on this day.
+ * <p>
+ * Compiled programs can be moved into a memory mapped file with {@link #map(Path)}, which is done for
+ * {@link EpisimConfigGroup.EventStorage#mapped}. The instructions are then read from the mapping and not held on the heap.
+ */
+final class ReplayProgram {
+
+	static final byte ACTIVITY_START = 0;
+	static final byte ACTIVITY_END = 1;
+	static final byte ENTERS_VEHICLE = 2;
+	static final byte LEAVES_VEHICLE = 3;
+
+	private byte[] ops = new byte[1024];
+	private int[] persons = new int[1024];
+	private int[] containers = new int[1024];
+	private int[] actTypes = new int[1024];
+	private double[] times = new double[1024];
+
+	/**
+	 * Position of each instruction, only present for programs with base.
+	 */
+	@Nullable
+	private int[] positions;
+
+	/**
+	 * Instructions in a memory mapped file, see {@link #map(Path)}. Null if the instructions are held in the arrays above.
+	 */
+	@Nullable
+	private ByteBuffer mappedOps;
+	private IntBuffer mappedPersons;
+	private IntBuffer mappedContainers;
+	private IntBuffer mappedActTypes;
+	private DoubleBuffer mappedTimes;
+	private IntBuffer mappedPositions;
+
+	@Nullable
+	private ReplayProgram base;
+
+	/**
+	 * Indices of persons whose instructions are not taken from the base.
+	 */
+	@Nullable
+	private BitSet changed;
+
+	private int size = 0;
+
+	/**
+	 * Number of instructions including the ones of the base program.
+	 */
+	private int length = 0;
+
+	/**
+	 * Creates a program without base.
+	 */
+	ReplayProgram() {
+	}
+
+	/**
+	 * Creates a program, which may be combined with a base program later.
+	 */
+	ReplayProgram(boolean withBase) {
+		if (withBase)
+			positions = new int[1024];
+	}
+
+	/**
+	 * Append an instruction to the program.
+	 *
+	 * @param actType index of activity type, or -1 for vehicle operations
+	 */
+	void add(byte op, int person, int container, int actType, double time) {
+
+		if (size == ops.length) {
+			int capacity = size + (size >> 1);
+			ops = Arrays.copyOf(ops, capacity);
+			persons = Arrays.copyOf(persons, capacity);
+			containers = Arrays.copyOf(containers, capacity);
+			actTypes = Arrays.copyOf(actTypes, capacity);
+			times = Arrays.copyOf(times, capacity);
+			if (positions != null)
+				positions = Arrays.copyOf(positions, capacity);
+		}
+
+		if (positions != null)
+			positions[size] = length;
+
+		ops[size] = op;
+		persons[size] = person;
+		containers[size] = container;
+		actTypes[size] = actType;
+		times[size] = time;
+		size++;
+		length++;
+	}
+
+	/**
+	 * Append an instruction that is taken from the base program.
+	 */
+	void addFromBase() {
+		if (positions == null)
+			throw new IllegalStateException("Program was not created with base.");
+
+		length++;
+	}
+
+	/**
+	 * Set the base program and the indices of persons that are not taken from it.
+	 */
+	void setBase(ReplayProgram base, BitSet changed) {
+		if (positions == null && mappedPositions == null)
+			throw new IllegalStateException("Program was not created with base.");
+
+		this.base = base;
+		this.changed = changed;
+	}
+
+	/**
+	 * Release unused capacity, after the program has been fully compiled.
+	 */
+	void trim() {
+		ops = Arrays.copyOf(ops, size);
+		persons = Arrays.copyOf(persons, size);
+		containers = Arrays.copyOf(containers, size);
+		actTypes = Arrays.copyOf(actTypes, size);
+		times = Arrays.copyOf(times, size);
+		if (positions != null)
+			positions = Arrays.copyOf(positions, size);
+	}
+
+	/**
+	 * Moves the instructions into {@code file}, which is memory mapped, and releases the arrays. No instructions can be added afterwards.
+	 * Each field is mapped separately, so that programs with up to {@code Integer.MAX_VALUE / 8} instructions can be mapped.
+	 */
+	void map(Path file) throws IOException {
+		if (mappedOps != null)
+			throw new IllegalStateException("Program is already mapped.");
+		if (8L * size > Integer.MAX_VALUE)
+			throw new IOException("Too many instructions to map: " + size);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+			// fields are only replaced when all of them are mapped
+			ByteBuffer mOps = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			mOps.put(ops, 0, size);
+			long offset = size;
+
+			IntBuffer mPersons = mapInts(channel, offset, persons);
+			offset += 4L * size;
+			IntBuffer mContainers = mapInts(channel, offset, containers);
+			offset += 4L * size;
+			IntBuffer mActTypes = mapInts(channel, offset, actTypes);
+			offset += 4L * size;
+
+			ByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, offset, 8L * size);
+			buf.asDoubleBuffer().put(times, 0, size);
+			DoubleBuffer mTimes = buf.asDoubleBuffer();
+			offset += 8L * size;
+
+			IntBuffer mPositions = positions != null ? mapInts(channel, offset, positions) : null;
+
+			mappedPersons = mPersons;
+			mappedContainers = mContainers;
+			mappedActTypes = mActTypes;
+			mappedTimes = mTimes;
+			mappedPositions = mPositions;
+			mappedOps = mOps;
+		}
+
+		// mappings stay valid after the channel is closed
+		ops = null;
+		persons = null;
+		containers = null;
+		actTypes = null;
+		times = null;
+		positions = null;
+	}
+
+	private IntBuffer mapInts(FileChannel channel, long offset, int[] values) throws IOException {
+		ByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, offset, 4L * size);
+		buf.asIntBuffer().put(values, 0, size);
+		return buf.asIntBuffer();
+	}
+
+	/**
+	 * Whether the instructions are held in a memory mapped file.
+	 */
+	boolean isMapped() {
+		return mappedOps != null;
+	}
+
+	/**
+	 * Passes all instructions in order to {@code handler}. For programs with base, the instructions of the delta are merged with the
+	 * instructions of unchanged persons in the base program.
+	 */
+	void execute(InstructionHandler handler) {
+
+		if (base == null) {
+			for (int i = 0; i < size; i++)
+				handler.handle(this, i);
+
+			return;
+		}
+
+		int b = 0;
+		int d = 0;
+		for (int pos = 0; pos < length; pos++) {
+			if (d < size && getPosition(d) == pos) {
+				handler.handle(this, d++);
+			} else {
+				while (changed.get(base.getPerson(b)))
+					b++;
+
+				handler.handle(base, b++);
+			}
+		}
+	}
+
+	/**
+	 * Number of instructions.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Number of instructions including the ones taken from the base program.
+	 */
+	int length() {
+		return length;
+	}
+
+	@Nullable
+	ReplayProgram getBase() {
+		return base;
+	}
+
+	// absolute reads of the buffers do not modify them, so they are safe to use concurrently
+
+	private int getPosition(int i) {
+		return mappedOps != null ? mappedPositions.get(i) : positions[i];
+	}
+
+	byte getOp(int i) {
+		return mappedOps != null ? mappedOps.get(i) : ops[i];
+	}
+
+	int getPerson(int i) {
+		return mappedOps != null ? mappedPersons.get(i) : persons[i];
+	}
+
+	int getContainer(int i) {
+		return mappedOps != null ? mappedContainers.get(i) : containers[i];
+	}
+
+	int getActType(int i) {
+		return mappedOps != null ? mappedActTypes.get(i) : actTypes[i];
+	}
+
+	double getTime(int i) {
+		return mappedOps != null ? mappedTimes.get(i) : times[i];
+	}
+
+	/**
+	 * Handles one instruction, see {@link #execute(InstructionHandler)}.
+	 */
+	@FunctionalInterface
+	interface InstructionHandler {
+
+		/**
+		 * Handles the instruction {@code i} of {@code program}, which is either the executed program or its base.
+		 */
+		void handle(ReplayProgram program, int i);
+	}
+}
@@ -0,0 +1,166 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import java.util.*;
+
+/**
+ * Index of susceptible persons, in total and per district. Persons are kept in the order they were given,
+ * so that the n-th susceptible person can be selected as from a list of all susceptible persons, but in logarithmic time.
+ * <p>
+ * The index is updated by {@link EpisimPerson#setDiseaseStatus(double, EpisimPerson.DiseaseStatus)}, when it is set in the {@link EpisimPersonStore}.
+ */
+final class SusceptibleIndex {
+
+	private final Group all;
+	private final Map<String, Group> districts = new HashMap<>();
+
+	/**
+	 * Group and position of each person by its store slot.
+	 */
+	private final Group[] districtOf;
+	private final int[] districtPos;
+	private final int[] allPos;
+
+	/**
+	 * Creates the index for all given persons.
+	 *
+	 * @param capacity capacity of the store all persons belong to
+	 */
+	SusceptibleIndex(Collection<EpisimPerson> persons, int capacity) {
+
+		districtOf = new Group[capacity];
+		districtPos = new int[capacity];
+		allPos = new int[capacity];
+
+		Map<String, List<EpisimPerson>> byDistrict = new HashMap<>();
+		for (EpisimPerson p : persons) {
+			String district = p.getDistrict();
+			if (district != null)
+				byDistrict.computeIfAbsent(district, k -> new ArrayList<>()).add(p);
+		}
+
+		all = new Group(persons, allPos);
+		for (Map.Entry<String, List<EpisimPerson>> e : byDistrict.entrySet()) {
+			Group g = new Group(e.getValue(), districtPos);
+			for (EpisimPerson p : e.getValue()) {
+				districtOf[p.getSlot()] = g;
+			}
+			districts.put(e.getKey(), g);
+		}
+	}
+
+	/**
+	 * Number of susceptible persons in a district, or in total if {@code district} is null.
+	 */
+	int size(String district) {
+		Group g = group(district);
+		return g == null ? 0 : g.count;
+	}
+
+	/**
+	 * Returns the {@code n}-th susceptible person of a district, or in total if {@code district} is null.
+	 */
+	EpisimPerson get(String district, int n) {
+		Group g = group(district);
+		if (g == null || n < 0 || n >= g.count)
+			throw new IndexOutOfBoundsException("Index " + n + " out of bounds for district " + district);
+
+		return g.get(n);
+	}
+
+	/**
+	 * Updates whether the person in {@code slot} is susceptible.
+	 */
+	void update(int slot, boolean susceptible) {
+		all.set(allPos[slot], susceptible);
+
+		Group g = districtOf[slot];
+		if (g != null)
+			g.set(districtPos[slot], susceptible);
+	}
+
+	private Group group(String district) {
+		return district == null ? all : districts.get(district);
+	}
+
+	/**
+	 * Persons of one group with a Fenwick tree over their susceptible flags.
+	 */
+	private static final class Group {
+
+		private final EpisimPerson[] persons;
+		private final boolean[] susceptible;
+
+		/**
+		 * One based Fenwick tree.
+		 */
+		private final int[] tree;
+		private final int step;
+		private int count;
+
+		private Group(Collection<EpisimPerson> members, int[] positions) {
+			persons = members.toArray(new EpisimPerson[0]);
+			susceptible = new boolean[persons.length];
+			tree = new int[persons.length + 1];
+			step = persons.length == 0 ? 0 : Integer.highestOneBit(persons.length);
+
+			for (int i = 0; i < persons.length; i++) {
+				positions[persons[i].getSlot()] = i;
+				if (persons[i].getDiseaseStatus() == EpisimPerson.DiseaseStatus.susceptible) {
+					susceptible[i] = true;
+					tree[i + 1]++;
+					count++;
+				}
+
+				// build the tree in linear time by propagating to the parent
+				int parent = (i + 1) + ((i + 1) & -(i + 1));
+				if (parent < tree.length)
+					tree[parent] += tree[i + 1];
+			}
+		}
+
+		private void set(int pos, boolean value) {
+			if (susceptible[pos] == value)
+				return;
+
+			susceptible[pos] = value;
+			int delta = value ? 1 : -1;
+			count += delta;
+			for (int i = pos + 1; i < tree.length; i += i & -i) {
+				tree[i] += delta;
+			}
+		}
+
+		private EpisimPerson get(int n) {
+			int pos = 0;
+			int remaining = n + 1;
+			for (int s = step; s > 0; s >>= 1) {
+				if (pos + s < tree.length && tree[pos + s] < remaining) {
+					pos += s;
+					remaining -= tree[pos];
+				}
+			}
+
+			return persons[pos];
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import it.unimi.dsi.fastutil.Hash;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenCustomHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shared storage of the trajectories of all persons. Each trajectory is stored as sequence of activity indices,
+ * identical trajectories are only stored once. Persons only keep the offset and length of their trajectory.
+ */
+final class TrajectoryPool {
+
+	/**
+	 * Activities are equal if they have the same type and the same parameter instance.
+	 */
+	private static final Hash.Strategy<EpisimPerson.Activity> ACTIVITY_STRATEGY = new Hash.Strategy<>() {
+		@Override
+		public int hashCode(EpisimPerson.Activity o) {
+			return o == null ? 0 : 31 * o.actType.hashCode() + System.identityHashCode(o.params);
+		}
+
+		@Override
+		public boolean equals(EpisimPerson.Activity a, EpisimPerson.Activity b) {
+			if (a == null || b == null)
+				return a == b;
+
+			return a.actType.equals(b.actType) && a.params == b.params;
+		}
+	};
+
+	private final List<EpisimPerson.Activity> activities = new ArrayList<>();
+	private final Object2IntMap<EpisimPerson.Activity> activityIndex = new Object2IntOpenCustomHashMap<>(ACTIVITY_STRATEGY);
+
+	/**
+	 * Offset of each distinct trajectory, only needed while trajectories are added.
+	 */
+	private Object2IntMap<IntArrayList> offsets = new Object2IntOpenHashMap<>();
+
+	private int[] pool = new int[1024];
+	private int size = 0;
+
+	TrajectoryPool() {
+		activityIndex.defaultReturnValue(-1);
+		offsets.defaultReturnValue(-1);
+	}
+
+	/**
+	 * Adds a trajectory to the pool and returns its offset.
+	 */
+	int add(List<EpisimPerson.Activity> trajectory) {
+
+		IntArrayList key = new IntArrayList(trajectory.size());
+		for (EpisimPerson.Activity act : trajectory) {
+			int i = activityIndex.getInt(act);
+			if (i == -1) {
+				i = activities.size();
+				activities.add(act);
+				activityIndex.put(act, i);
+			}
+			key.add(i);
+		}
+
+		if (offsets == null)
+			offsets = new Object2IntOpenHashMap<>();
+
+		int offset = offsets.getInt(key);
+		if (offset != -1)
+			return offset;
+
+		if (size + key.size() > pool.length)
+			pool = Arrays.copyOf(pool, Math.max(size + key.size(), pool.length + (pool.length >> 1)));
+
+		key.getElements(0, pool, size, key.size());
+		offset = size;
+		size += key.size();
+		offsets.put(key, offset);
+
+		return offset;
+	}
+
+	/**
+	 * Activity at {@code position} of the trajectory starting at {@code offset}.
+	 */
+	EpisimPerson.Activity get(int offset, int position) {
+		return activities.get(pool[offset + position]);
+	}
+
+	/**
+	 * Number of distinct trajectories added since the last {@link #trim()}.
+	 */
+	int getNumberOfTrajectories() {
+		return offsets == null ? 0 : offsets.size();
+	}
+
+	/**
+	 * Releases memory only needed while adding trajectories.
+	 */
+	void trim() {
+		pool = Arrays.copyOf(pool, size);
+		offsets = null;
+	}
+}
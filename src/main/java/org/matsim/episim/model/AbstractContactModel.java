@@ -20,6 +20,8 @@
  */
 package org.matsim.episim.model;
 
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.config.Config;
@@ -62,6 +64,21 @@ public abstract class AbstractContactModel implements ContactModel {
 	 */
 	protected final InfectionModel infectionModel;
 
+	/**
+	 * Whether containers without possible infections are skipped, see {@link EpisimConfigGroup.ContainerSkipping}.
+	 */
+	protected final boolean skipContainers;
+
+	/**
+	 * Interaction rules of activity pairs.
+	 */
+	private final ActivityInteractions interactions = new ActivityInteractions();
+
+	/**
+	 * Infection params by activity type. Activity types are usually the same string instances, thus they are memorized by reference.
+	 */
+	private final Reference2ObjectMap<String, EpisimConfigGroup.InfectionParams> paramsByActivity = new Reference2ObjectOpenHashMap<>();
+
 	protected int iteration;
 	private Map<String, Restriction> restrictions;
 
@@ -74,8 +91,16 @@ public abstract class AbstractContactModel implements ContactModel {
 		this.trParams = new EpisimPerson.Activity("tr", episimConfig.selectInfectionParams("tr"));
 		this.qhParams = new EpisimPerson.Activity(QUARANTINE_HOME, episimConfig.selectInfectionParams(QUARANTINE_HOME));
 		this.trackingMinDuration = ConfigUtils.addOrGetModule(config, TracingConfigGroup.class).getMinDuration();
+		this.skipContainers = episimConfig.getContainerSkipping() == EpisimConfigGroup.ContainerSkipping.skipRandomDraws;
 	}
 
+	/**
+	 * All status for which {@link #hasDiseaseStatusRelevantForInfectionDynamics(EpisimPerson)} is true.
+	 */
+	private static final EpisimPerson.DiseaseStatus[] RELEVANT_STATUS = {
+			EpisimPerson.DiseaseStatus.susceptible, EpisimPerson.DiseaseStatus.contagious, EpisimPerson.DiseaseStatus.showingSymptoms
+	};
+
 	private static boolean hasDiseaseStatusRelevantForInfectionDynamics(EpisimPerson personWrapper) {
 		switch (personWrapper.getDiseaseStatus()) {
 			case susceptible:
@@ -108,18 +133,32 @@ public abstract class AbstractContactModel implements ContactModel {
 	}
 
 	/**
-	 * Attention: In order to re-use the underlying object, this function returns a buffer.
-	 * Be aware that the old result will be overwritten, when the function is called multiple times.
+	 * Whether nothing can happen when {@code person} leaves the container while tracking is not enabled. This is the case if no
+	 * other person has a different status relevant for the infection dynamics, so there is neither an infection nor a reported contact.
+	 */
+	static boolean noInteractionPossible(EpisimPerson person, EpisimContainer<?> container) {
+		EpisimPerson.DiseaseStatus status = person.getDiseaseStatus();
+		if (!hasDiseaseStatusRelevantForInfectionDynamics(person))
+			return true;
+
+		int others = 0;
+		for (EpisimPerson.DiseaseStatus other : RELEVANT_STATUS) {
+			if (other != status)
+				others += container.getNumberOfPersons(other);
+		}
+
+		return others == 0;
+	}
+
+	/**
+	 * Returns the interaction of two persons with their activities in a container, which also provides the infection type.
 	 */
-	protected static StringBuilder getInfectionType(StringBuilder buffer, EpisimContainer<?> container, String leavingPersonsActivity,
-													String otherPersonsActivity) {
-		buffer.setLength(0);
+	protected final ActivityInteractions.Interaction getInteraction(EpisimContainer<?> container, String leavingPersonsActivity,
+																	String otherPersonsActivity) {
 		if (container instanceof InfectionEventHandler.EpisimFacility) {
-			buffer.append(leavingPersonsActivity).append("_").append(otherPersonsActivity);
-			return buffer;
+			return interactions.get(leavingPersonsActivity, otherPersonsActivity);
 		} else if (container instanceof InfectionEventHandler.EpisimVehicle) {
-			buffer.append("pt");
-			return buffer;
+			return ActivityInteractions.VEHICLE;
 		} else {
 			throw new RuntimeException("Infection situation is unknown");
 		}
@@ -130,9 +169,13 @@ public abstract class AbstractContactModel implements ContactModel {
 	 */
 	protected EpisimConfigGroup.InfectionParams getInfectionParams(EpisimContainer<?> container, EpisimPerson person, String activity) {
 		if (container instanceof InfectionEventHandler.EpisimVehicle) {
-			return episimConfig.selectInfectionParams(container.getContainerId().toString());
+			return container.getInfectionParams(episimConfig);
 		} else if (container instanceof InfectionEventHandler.EpisimFacility) {
-			EpisimConfigGroup.InfectionParams params = episimConfig.selectInfectionParams(activity);
+			EpisimConfigGroup.InfectionParams params = paramsByActivity.get(activity);
+			if (params == null) {
+				params = episimConfig.selectInfectionParams(activity);
+				paramsByActivity.put(activity, params);
+			}
 
 			// Select different infection params for home quarantined persons
 			if (person.getQuarantineStatus() == EpisimPerson.QuarantineStatus.atHome && params.getContainerName().equals("home")) {
@@ -146,10 +189,10 @@ public abstract class AbstractContactModel implements ContactModel {
 	}
 
 	protected void trackContactPerson(EpisimPerson personLeavingContainer, EpisimPerson otherPerson, double now, double jointTimeInContainer,
-									  StringBuilder infectionType) {
+									  ActivityInteractions.Interaction interaction) {
 
 		// Don't track certain activities
-		if (infectionType.indexOf("pt") >= 0 || infectionType.indexOf("shop") >= 0) {
+		if (!interaction.trackable) {
 			return;
 		}
 
@@ -163,7 +206,7 @@ public abstract class AbstractContactModel implements ContactModel {
 	}
 
 	private boolean activityRelevantForInfectionDynamics(EpisimPerson person, EpisimContainer<?> container, Map<String, Restriction> restrictions, SplittableRandom rnd) {
-		EpisimPerson.Activity act = person.getTrajectory().get(person.getCurrentPositionInTrajectory());
+		EpisimPerson.Activity act = person.getTrajectoryElement(person.getCurrentPositionInTrajectory());
 
 		// Check if person is home quarantined
 		if (person.getQuarantineStatus() == EpisimPerson.QuarantineStatus.atHome && !act.actType.startsWith("home"))
@@ -195,13 +238,13 @@ public abstract class AbstractContactModel implements ContactModel {
 	private boolean tripRelevantForInfectionDynamics(EpisimPerson person, Map<String, Restriction> restrictions, SplittableRandom rnd) {
 		EpisimPerson.Activity lastAct = null;
 		if (person.getCurrentPositionInTrajectory() != 0) {
-			lastAct = person.getTrajectory().get(person.getCurrentPositionInTrajectory() - 1);
+			lastAct = person.getTrajectoryElement(person.getCurrentPositionInTrajectory() - 1);
 		}
 
 		if (person.getQuarantineStatus() != EpisimPerson.QuarantineStatus.no)
 			return false;
 
-		EpisimPerson.Activity nextAct = person.getTrajectory().get(person.getCurrentPositionInTrajectory());
+		EpisimPerson.Activity nextAct = person.getTrajectoryElement(person.getCurrentPositionInTrajectory());
 
 		// last activity is only considered if present
 		return actIsRelevant(trParams, restrictions, rnd) && actIsRelevant(nextAct, restrictions, rnd)
@@ -240,13 +283,13 @@ public abstract class AbstractContactModel implements ContactModel {
 	public void setRestrictionsForIteration(int iteration, Map<String, Restriction> restrictions) {
 		this.iteration = iteration;
 		this.restrictions = restrictions;
-		this.infectionModel.setIteration(iteration);
+		this.infectionModel.setRestrictionsForIteration(iteration, restrictions);
 	}
 
 	/**
 	 * Sets the infection status of a person and reports the event.
 	 */
-	protected void infectPerson(EpisimPerson personWrapper, EpisimPerson infector, double now, StringBuilder infectionType,
+	protected void infectPerson(EpisimPerson personWrapper, EpisimPerson infector, double now, String infectionType,
 								EpisimContainer<?> container) {
 
 		if (personWrapper.getDiseaseStatus() != EpisimPerson.DiseaseStatus.susceptible) {
@@ -272,7 +315,7 @@ public abstract class AbstractContactModel implements ContactModel {
 			now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), 24 * 60 * 60 - 1, iteration);
 		}
 
-		reporting.reportInfection(personWrapper, infector, now, infectionType.toString(), container);
+		reporting.reportInfection(personWrapper, infector, now, infectionType, container);
 		personWrapper.setDiseaseStatus(now, EpisimPerson.DiseaseStatus.infectedButNotContagious);
 		personWrapper.setInfectionContainer(container);
 
@@ -1,9 +1,5 @@
 package org.matsim.episim.model;
 
-import it.unimi.dsi.fastutil.ints.Int2LongMap;
-import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
-import it.unimi.dsi.fastutil.objects.Object2LongMap;
-import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.episim.EpisimConfigGroup;
@@ -11,12 +7,17 @@ import org.matsim.episim.EpisimPerson;
 import org.matsim.episim.EpisimReporting;
 import org.matsim.episim.EpisimUtils;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.util.SplittableRandom;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Abstract base implementation for a progression model that stores and updates state transitions.
@@ -29,8 +30,19 @@ abstract class AbstractProgressionModel implements ProgressionModel, Externaliza
 
 	/**
 	 * Stores the next state and after which day. (int & int) = 64bit
+	 * Indexed by person id, so that different persons can be updated concurrently.
 	 */
-	private final Object2LongMap<Id<Person>> nextStateAndDay = new Object2LongOpenHashMap<>();
+	private long[] nextStateAndDay = new long[0];
+
+	/**
+	 * Person id indices by the day of their next scheduled update.
+	 */
+	private final NavigableMap<Integer, BitSet> schedule = new TreeMap<>();
+
+	/**
+	 * Whether all persons need to be updated, because the schedule is not known.
+	 */
+	private boolean updateAll = false;
 
 	@Inject
 	AbstractProgressionModel(SplittableRandom rnd, EpisimConfigGroup episimConfig) {
@@ -46,7 +58,139 @@ abstract class AbstractProgressionModel implements ProgressionModel, Externaliza
 	}
 
 	@Override
-	public void updateState(EpisimPerson person, int day) {
+	public final void updateState(EpisimPerson person, int day) {
+		updateState(person, day, rnd, null);
+	}
+
+	@Override
+	public void updateStates(List<EpisimPerson> persons, int day, int threads) {
+
+		ensureCapacity(Id.getNumberOfIds(Person.class));
+
+		// all person streams depend only on this value and the person, but not on the partitioning
+		long seed = rnd.nextLong();
+
+		int n = Math.max(1, Math.min(threads, persons.size()));
+		List<List<Runnable>> deferred = new ArrayList<>(n);
+
+		if (n == 1) {
+			deferred.add(updatePartition(persons, day, seed));
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(n);
+			try {
+				List<CompletableFuture<List<Runnable>>> futures = new ArrayList<>();
+				for (int i = 0; i < n; i++) {
+					List<EpisimPerson> partition = persons.subList(i * persons.size() / n, (i + 1) * persons.size() / n);
+					futures.add(CompletableFuture.supplyAsync(() -> updatePartition(partition, day, seed), executor));
+				}
+
+				for (CompletableFuture<List<Runnable>> f : futures) {
+					deferred.add(f.join());
+				}
+
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+
+				throw e;
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+
+		// merge phase, effects are applied in order of the persons
+		for (List<Runnable> list : deferred) {
+			list.forEach(Runnable::run);
+		}
+	}
+
+	@Override
+	public BitSet getScheduledPersons(int day) {
+
+		if (updateAll) {
+			updateAll = false;
+			schedule.clear();
+			return null;
+		}
+
+		BitSet persons = new BitSet();
+		Map<Integer, BitSet> due = schedule.headMap(day, true);
+		due.values().forEach(persons::or);
+		due.clear();
+
+		return persons;
+	}
+
+	@Override
+	public void afterStateUpdate(EpisimPerson person, int day) {
+		int next = nextUpdateDay(person, day);
+		if (next != Integer.MAX_VALUE)
+			schedule.computeIfAbsent(next, k -> new BitSet()).set(person.getPersonId().index());
+	}
+
+	/**
+	 * Next day after {@code day} on which the state of a person needs to be updated, or {@link Integer#MAX_VALUE} if it does not need
+	 * updates until its status changes. Updating earlier than needed must not have any effect.
+	 */
+	protected int nextUpdateDay(EpisimPerson person, int day) {
+
+		EpisimPerson.DiseaseStatus status = person.getDiseaseStatus();
+
+		if (status == EpisimPerson.DiseaseStatus.susceptible)
+			return Integer.MAX_VALUE;
+
+		if (status == EpisimPerson.DiseaseStatus.recovered)
+			return person.getQuarantineStatus() != EpisimPerson.QuarantineStatus.no ? day + 1 : Integer.MAX_VALUE;
+
+		int index = person.getPersonId().index();
+		long value = index < nextStateAndDay.length ? nextStateAndDay[index] : 0;
+		if (value == 0)
+			return day + 1;
+
+		int transitionDay = (int) value;
+		return day + Math.max(1, transitionDay - person.daysSince(status, day));
+	}
+
+	/**
+	 * Updates a partition of persons, each with its own random stream.
+	 *
+	 * @return effects of the update that have to be applied sequentially
+	 */
+	private List<Runnable> updatePartition(List<EpisimPerson> persons, int day, long seed) {
+		List<Runnable> deferred = new ArrayList<>();
+		for (EpisimPerson person : persons) {
+			SplittableRandom personRnd = new SplittableRandom(personSeed(seed, day, person.getPersonId().index()));
+			updateState(person, day, personRnd, deferred);
+		}
+		return deferred;
+	}
+
+	/**
+	 * Seed of the random stream of one person on one day. All inputs are passed through a mixing function,
+	 * so that seeds of neighbouring persons and days are uncorrelated and their streams do not overlap.
+	 */
+	static long personSeed(long seed, int day, int index) {
+		long z = mix64(seed + 0x9E3779B97F4A7C15L * (day + 1L));
+		return mix64(z + 0x9E3779B97F4A7C15L * (index + 1L));
+	}
+
+	/**
+	 * Finalizer of the SplitMix64 generator (Stafford variant 13).
+	 */
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Updates the state of a person.
+	 *
+	 * @param rnd      random number generator to use for all decisions
+	 * @param deferred if not null, effects that are not local to the person must be added to this list instead of being applied,
+	 *                 see {@link #runOrDefer(List, Runnable)}
+	 */
+	protected void updateState(EpisimPerson person, int day, SplittableRandom rnd, @Nullable List<Runnable> deferred) {
 
 		EpisimPerson.DiseaseStatus status = person.getDiseaseStatus();
 
@@ -66,7 +210,7 @@ abstract class AbstractProgressionModel implements ProgressionModel, Externaliza
 		}
 
 		// 0 is empty transition
-		long value = nextStateAndDay.getOrDefault(id, 0);
+		long value = id.index() < nextStateAndDay.length ? nextStateAndDay[id.index()] : 0;
 
 		if (value != 0) {
 
@@ -77,17 +221,20 @@ abstract class AbstractProgressionModel implements ProgressionModel, Externaliza
 			int daysSince = person.daysSince(status, day);
 			if (daysSince >= transitionDay) {
 				EpisimPerson.DiseaseStatus next = EpisimPerson.DiseaseStatus.values()[nextState];
-				person.setDiseaseStatus(now, next);
-				onTransition(person, now, day, status, next);
+				person.setDiseaseStatus(now, next, deferred == null);
+				if (deferred != null)
+					deferred.add(() -> person.reportDiseaseStatus(now, next));
+
+				onTransition(person, now, day, status, next, deferred);
 
 				if (next != EpisimPerson.DiseaseStatus.recovered) {
-					if (updateNext(person, id, next))
-						updateState(person, day);
+					if (updateNext(person, id, next, rnd))
+						updateState(person, day, rnd, deferred);
 				}
 			}
 		} else {
-			if (updateNext(person, id, status))
-				updateState(person, day);
+			if (updateNext(person, id, status, rnd))
+				updateState(person, day, rnd, deferred);
 		}
 	}
 
@@ -96,30 +243,49 @@ abstract class AbstractProgressionModel implements ProgressionModel, Externaliza
 	 *
 	 * @return true when there should be an immediate update again
 	 */
-	private boolean updateNext(EpisimPerson person, Id<Person> id, EpisimPerson.DiseaseStatus from) {
-		EpisimPerson.DiseaseStatus next = decideNextState(person);
-		int nextTransitionDay = decideTransitionDay(person, from, next);
+	private boolean updateNext(EpisimPerson person, Id<Person> id, EpisimPerson.DiseaseStatus from, SplittableRandom rnd) {
+		EpisimPerson.DiseaseStatus next = decideNextState(person, rnd);
+		int nextTransitionDay = decideTransitionDay(person, from, next, rnd);
 
-		nextStateAndDay.put(id, compoundLong(next.ordinal(), nextTransitionDay));
+		ensureCapacity(id.index() + 1);
+		nextStateAndDay[id.index()] = compoundLong(next.ordinal(), nextTransitionDay);
 
 		// allow multiple updates on the same day
 		return nextTransitionDay == 0;
 	}
 
+	private void ensureCapacity(int capacity) {
+		if (capacity > nextStateAndDay.length)
+			nextStateAndDay = Arrays.copyOf(nextStateAndDay, Math.max(capacity, nextStateAndDay.length + (nextStateAndDay.length >> 1)));
+	}
+
+	/**
+	 * Runs {@code effect} directly, or adds it to the {@code deferred} list if present.
+	 */
+	protected static void runOrDefer(@Nullable List<Runnable> deferred, Runnable effect) {
+		if (deferred == null)
+			effect.run();
+		else
+			deferred.add(effect);
+	}
+
 	/**
 	 * Choose the next state a person will attain.
 	 */
-	protected abstract EpisimPerson.DiseaseStatus decideNextState(EpisimPerson person);
+	protected abstract EpisimPerson.DiseaseStatus decideNextState(EpisimPerson person, SplittableRandom rnd);
 
 	/**
 	 * Chose how long a person stays in {@code from} until the disease changes to {@code to}.
 	 */
-	protected abstract int decideTransitionDay(EpisimPerson person, EpisimPerson.DiseaseStatus from, EpisimPerson.DiseaseStatus to);
+	protected abstract int decideTransitionDay(EpisimPerson person, EpisimPerson.DiseaseStatus from, EpisimPerson.DiseaseStatus to, SplittableRandom rnd);
 
 	/**
 	 * Arbitrary function that can be overwritten to perform actions on state transitions.
+	 *
+	 * @param deferred effects on other persons or shared state must be passed to {@link #runOrDefer(List, Runnable)}
 	 */
-	protected void onTransition(EpisimPerson person, double now, int day, EpisimPerson.DiseaseStatus from, EpisimPerson.DiseaseStatus to) {
+	protected void onTransition(EpisimPerson person, double now, int day, EpisimPerson.DiseaseStatus from, EpisimPerson.DiseaseStatus to,
+								@Nullable List<Runnable> deferred) {
 	}
 
 	@Override
@@ -129,10 +295,17 @@ abstract class AbstractProgressionModel implements ProgressionModel, Externaliza
 
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
-		out.writeInt(nextStateAndDay.size());
-		for (Object2LongMap.Entry<Id<Person>> entry : nextStateAndDay.object2LongEntrySet()) {
-			EpisimUtils.writeChars(out, entry.getKey().toString());
-			out.writeLong(entry.getLongValue());
+		int n = 0;
+		for (long value : nextStateAndDay) {
+			if (value != 0) n++;
+		}
+
+		out.writeInt(n);
+		for (int i = 0; i < nextStateAndDay.length; i++) {
+			if (nextStateAndDay[i] == 0) continue;
+
+			EpisimUtils.writeChars(out, Id.get(i, Person.class).toString());
+			out.writeLong(nextStateAndDay[i]);
 		}
 	}
 
@@ -141,7 +314,11 @@ abstract class AbstractProgressionModel implements ProgressionModel, Externaliza
 		int n = in.readInt();
 		for (int i = 0; i < n; i++) {
 			Id<Person> key = Id.createPersonId(EpisimUtils.readChars(in));
-			nextStateAndDay.put(key, in.readLong());
+			ensureCapacity(key.index() + 1);
+			nextStateAndDay[key.index()] = in.readLong();
 		}
+
+		// schedule is not persisted, it will be created again
+		updateAll = true;
 	}
 }
@@ -0,0 +1,154 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.model;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+/**
+ * Rules for the interaction of two activity types within a facility. Activity types are numbered when they occur first and the
+ * {@link Interaction} of each pair is computed only once, so that the contact models do not need to build and search infection type strings.
+ * <p>
+ * Not thread-safe, each contact model holds its own instance.
+ */
+final class ActivityInteractions {
+
+	/**
+	 * Interaction within vehicles, which are always reported as "pt".
+	 */
+	static final Interaction VEHICLE = new Interaction("pt", true, false);
+
+	/**
+	 * Activity types are usually the same string instances, thus they are looked up by reference first.
+	 */
+	private final Reference2IntMap<String> byReference = new Reference2IntOpenHashMap<>();
+	private final Object2IntMap<String> byName = new Object2IntOpenHashMap<>();
+
+	/**
+	 * Interactions of all pairs, the row is the activity of the leaving person. Null if not computed yet.
+	 */
+	private Interaction[] table = new Interaction[0];
+	private int capacity = 0;
+
+	ActivityInteractions() {
+		byReference.defaultReturnValue(-1);
+		byName.defaultReturnValue(-1);
+	}
+
+	/**
+	 * Returns the interaction of a person leaving the facility with another person.
+	 */
+	Interaction get(String leavingPersonsActivity, String otherPersonsActivity) {
+		int leaving = code(leavingPersonsActivity);
+		int other = code(otherPersonsActivity);
+
+		Interaction interaction = table[leaving * capacity + other];
+		if (interaction == null) {
+			interaction = Interaction.of(leavingPersonsActivity, otherPersonsActivity);
+			table[leaving * capacity + other] = interaction;
+		}
+
+		return interaction;
+	}
+
+	/**
+	 * Code of an activity type, which is assigned if not known yet.
+	 */
+	int code(String actType) {
+		int code = byReference.getInt(actType);
+		if (code != -1)
+			return code;
+
+		code = byName.getInt(actType);
+		if (code == -1) {
+			code = byName.size();
+			byName.put(actType, code);
+			if (code >= capacity)
+				resize(Math.max(16, capacity * 2));
+		}
+
+		byReference.put(actType, code);
+		return code;
+	}
+
+	private void resize(int newCapacity) {
+		Interaction[] newTable = new Interaction[newCapacity * newCapacity];
+		for (int i = 0; i < capacity; i++) {
+			System.arraycopy(table, i * capacity, newTable, i * newCapacity, capacity);
+		}
+
+		table = newTable;
+		capacity = newCapacity;
+	}
+
+	/**
+	 * Interaction of two activity types.
+	 */
+	static final class Interaction {
+
+		/**
+		 * Infection type as it is reported, e.g. "home_leisure".
+		 */
+		final String label;
+
+		/**
+		 * Whether persons of these activities can interact at all.
+		 */
+		final boolean allowed;
+
+		/**
+		 * Whether contacts of these activities can be traced.
+		 */
+		final boolean trackable;
+
+		private Interaction(String label, boolean allowed, boolean trackable) {
+			this.label = label;
+			this.allowed = allowed;
+			this.trackable = trackable;
+		}
+
+		private static Interaction of(String leavingPersonsActivity, String otherPersonsActivity) {
+			String label = leavingPersonsActivity + "_" + otherPersonsActivity;
+
+			boolean allowed = true;
+			//home can only interact with home, leisure or work
+			if (label.contains("home") && !label.contains("leis") && !label.contains("work")
+					&& !(leavingPersonsActivity.startsWith("home") && otherPersonsActivity.startsWith("home"))) {
+				allowed = false;
+			} else if (label.contains("edu") && !label.contains("work") && !(leavingPersonsActivity.startsWith("edu") && otherPersonsActivity.startsWith("edu"))) {
+				//edu can only interact with work or edu
+				allowed = false;
+			}
+
+			// Don't track certain activities
+			boolean trackable = !label.contains("pt") && !label.contains("shop");
+
+			return new Interaction(label, allowed, trackable);
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+	}
+}
@@ -46,14 +46,7 @@ public final class AgeDependentProgressionModel extends ConfigurableProgressionM
 
 		double proba = -1;
 
-		int age = -1;
-
-		for (String attr : person.getAttributes().getAsMap().keySet()) {
-			if (attr.contains("age")) {
-				age = (int) person.getAttributes().getAttribute(attr);
-				break;
-			}
-		}
+		int age = person.getAge();
 
 		if (age != -1) {
 
@@ -92,14 +85,7 @@ public final class AgeDependentProgressionModel extends ConfigurableProgressionM
 	protected double getProbaOfTransitioningToCritical(EpisimPerson person) {
 		double proba = -1;
 
-		int age = -1;
-
-		for (String attr : person.getAttributes().getAsMap().keySet()) {
-			if (attr.contains("age")) {
-				age = (int) person.getAttributes().getAttribute(attr);
-				break;
-			}
-		}
+		int age = person.getAge();
 
 		if (age != -1) {
 
@@ -14,11 +14,13 @@ import org.matsim.episim.EpisimUtils;
 import org.matsim.episim.TracingConfigGroup;
 import org.matsim.facilities.ActivityFacility;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.time.LocalDate;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.SplittableRandom;
 
@@ -124,8 +126,8 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 	}
 
 	@Override
-	public final void updateState(EpisimPerson person, int day) {
-		super.updateState(person, day);
+	protected final void updateState(EpisimPerson person, int day, SplittableRandom rnd, @Nullable List<Runnable> deferred) {
+		super.updateState(person, day, rnd, deferred);
 
 		// account for the delay in showing symptoms and tracing
 		int tracingDelay = tracingConfig.getTracingDelay();
@@ -142,22 +144,47 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 		if (person.hadDiseaseStatus(EpisimPerson.DiseaseStatus.showingSymptoms) && tracingDelay > 0 &&
 				person.daysSince(EpisimPerson.DiseaseStatus.showingSymptoms, day) == tracingDelay) {
 
-			performTracing(person, now - tracingDelay * DAY, day);
+			runOrDefer(deferred, () -> performTracing(person, now - tracingDelay * DAY, day));
 		}
+	}
+
+	@Override
+	public void updateContacts(EpisimPerson person, int day) {
+		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), 0, day);
 
 		// clear tracing if not relevant anymore
 		person.clearTraceableContractPersons(now - (tracingConfig.getTracingDelay() + tracingConfig.getTracingDayDistance() + 1) * DAY);
 	}
 
 	@Override
-	protected final void onTransition(EpisimPerson person, double now, int day, EpisimPerson.DiseaseStatus from, EpisimPerson.DiseaseStatus to) {
+	protected int nextUpdateDay(EpisimPerson person, int day) {
+		int next = super.nextUpdateDay(person, day);
+
+		// release from quarantine
+		if (person.getDiseaseStatus() == EpisimPerson.DiseaseStatus.susceptible && person.getQuarantineStatus() != EpisimPerson.QuarantineStatus.no)
+			next = Math.min(next, day + Math.max(1, 15 - person.daysSinceQuarantine(day)));
+
+		// delayed tracing
+		int tracingDelay = tracingConfig.getTracingDelay();
+		if (tracingDelay > 0 && person.hadDiseaseStatus(EpisimPerson.DiseaseStatus.showingSymptoms)) {
+			int daysSince = person.daysSince(EpisimPerson.DiseaseStatus.showingSymptoms, day);
+			if (daysSince < tracingDelay)
+				next = Math.min(next, day + tracingDelay - daysSince);
+		}
+
+		return next;
+	}
+
+	@Override
+	protected final void onTransition(EpisimPerson person, double now, int day, EpisimPerson.DiseaseStatus from, EpisimPerson.DiseaseStatus to,
+									  @Nullable List<Runnable> deferred) {
 
 		if (to == EpisimPerson.DiseaseStatus.showingSymptoms) {
 
 			person.setQuarantineStatus(EpisimPerson.QuarantineStatus.full, day);
 			// Perform tracing immediately if there is no delay, otherwise needs to be done when person shows symptoms
 			if (tracingConfig.getTracingDelay() == 0) {
-				performTracing(person, now, day);
+				runOrDefer(deferred, () -> performTracing(person, now, day));
 			}
 
 			// count infections at locations
@@ -166,7 +193,7 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 				// persons with no infection container have been initially infected
 				if (person.getInfectionContainer() != null && !person.getInfectionContainer().toString().startsWith("home") &&
 						!person.getInfectionContainer().toString().startsWith("tr")) {
-					locations.mergeInt(person.getInfectionContainer(), 1, Integer::sum);
+					runOrDefer(deferred, () -> locations.mergeInt(person.getInfectionContainer(), 1, Integer::sum));
 				}
 			}
 		}
@@ -217,7 +244,7 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 	}
 
 	@Override
-	protected final EpisimPerson.DiseaseStatus decideNextState(EpisimPerson person) {
+	protected final EpisimPerson.DiseaseStatus decideNextState(EpisimPerson person, SplittableRandom rnd) {
 
 		switch (person.getDiseaseStatus()) {
 			case infectedButNotContagious:
@@ -255,7 +282,7 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 	}
 
 	@Override
-	protected final int decideTransitionDay(EpisimPerson person, EpisimPerson.DiseaseStatus from, EpisimPerson.DiseaseStatus to) {
+	protected final int decideTransitionDay(EpisimPerson person, EpisimPerson.DiseaseStatus from, EpisimPerson.DiseaseStatus to, SplittableRandom rnd) {
 		Transition t = tMatrix[from.ordinal() * EpisimPerson.DiseaseStatus.values().length + to.ordinal()];
 		if (t == null) throw new IllegalStateException(String.format("No transition from %s to %s defined", from, to));
 
@@ -293,7 +320,7 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 
 		// quarantine household flag controls direct household and 2nd order household
 		if (tracingConfig.getQuarantineHousehold())
-			homeId = (String) person.getAttributes().getAttribute("homeId");
+			homeId = person.getHomeId();
 
 		for (EpisimPerson pw : person.getTraceableContactPersons(now - tracingConfig.getTracingDayDistance() * DAY)) {
 
@@ -308,7 +335,7 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 				continue;
 
 			// Persons of the same household are always traced successfully
-			if ((homeId != null && homeId.equals(pw.getAttributes().getAttribute("homeId")))
+			if ((homeId != null && person.isSameHome(pw))
 					|| tracingProb == 1d || rnd.nextDouble() < tracingProb) {
 				quarantinePerson(pw, day);
 				log.debug("sending person={} into quarantine because of contact to person={}", pw.getPersonId(), person.getPersonId());
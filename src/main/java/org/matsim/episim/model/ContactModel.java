@@ -42,7 +42,8 @@ public interface ContactModel {
 	void infectionDynamicsFacility(EpisimPerson personLeavingFacility, InfectionEventHandler.EpisimFacility facility, double now, String actType);
 
 	/**
-	 * Set the current iteration and restrictions in place.
+	 * Set the current iteration and restrictions in place. Restrictions must only be changed before this call,
+	 * they are constant until the next call.
 	 */
 	void setRestrictionsForIteration(int iteration, Map<String, Restriction> restrictions);
 }
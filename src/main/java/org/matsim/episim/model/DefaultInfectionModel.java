@@ -19,11 +19,18 @@ public final class DefaultInfectionModel implements InfectionModel {
 
 	private final FaceMaskModel maskModel;
 	private final EpisimConfigGroup episimConfig;
+	private final InfectionKernel kernel;
 
 	@Inject
 	public DefaultInfectionModel(FaceMaskModel faceMaskModel, Config config) {
 		this.maskModel = faceMaskModel;
 		this.episimConfig = ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class);
+		this.kernel = new InfectionKernel(episimConfig);
+	}
+
+	@Override
+	public void setRestrictionsForIteration(int iteration, Map<String, Restriction> restrictions) {
+		kernel.update(restrictions);
 	}
 
 
@@ -31,8 +38,7 @@ public final class DefaultInfectionModel implements InfectionModel {
 	public double calcInfectionProbability(EpisimPerson target, EpisimPerson infector, Map<String, Restriction> restrictions,
 										   EpisimConfigGroup.InfectionParams act1, EpisimConfigGroup.InfectionParams act2, double jointTimeInContainer) {
 
-		// ci corr can not be null, because sim is initialized with non null value
-		double ciCorrection = Math.min(restrictions.get(act1.getContainerName()).getCiCorrection(), restrictions.get(act2.getContainerName()).getCiCorrection());
+		double ciCorrection = kernel.getCiCorrection(act1, act2, restrictions);
 		double contactIntensity = Math.min(act1.getContactIntensity(), act2.getContactIntensity());
 
 		// note that for 1pct runs, calibParam is of the order of one, which means that for typical times of 100sec or more,
@@ -40,8 +46,8 @@ public final class DefaultInfectionModel implements InfectionModel {
 		// no effect.  kai, mar'20
 
 		return 1 - Math.exp(-episimConfig.getCalibrationParameter() * contactIntensity * jointTimeInContainer * ciCorrection
-				* maskModel.getWornMask(infector, act2, restrictions.get(act2.getContainerName())).shedding
-				* maskModel.getWornMask(target, act1, restrictions.get(act1.getContainerName())).intake
+				* maskModel.getWornMask(infector, act2, kernel.getRestriction(act2, restrictions)).shedding
+				* maskModel.getWornMask(target, act1, kernel.getRestriction(act1, restrictions)).intake
 		);
 
 	}
@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.model;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import org.matsim.episim.EpisimConfigGroup;
+import org.matsim.episim.policy.Restriction;
+
+import java.util.Map;
+
+/**
+ * Restriction values that are constant for one day, compiled for all pairs of {@link EpisimConfigGroup.InfectionParams}, so that the
+ * infection models do not need to look up the restrictions of both activities for every contact.
+ * <p>
+ * The kernel is compiled from a snapshot of the restrictions given at the start of the day, see {@link InfectionModel#setRestrictionsForIteration(int, Map)}.
+ * Restrictions must only be changed before that call, changes during the day are not visible in the kernel.
+ * Lookups with another map than the compiled one are computed directly.
+ */
+final class InfectionKernel {
+
+	/**
+	 * Index of infection params, looked up by reference.
+	 */
+	private final Reference2IntMap<EpisimConfigGroup.InfectionParams> index = new Reference2IntOpenHashMap<>();
+
+	private final EpisimConfigGroup episimConfig;
+
+	/**
+	 * Number of infection params.
+	 */
+	private int n;
+
+	/**
+	 * Contact intensity correction of each pair, NaN if a restriction is missing.
+	 */
+	private double[] ciCorrection;
+
+	/**
+	 * Copy of the restriction of each infection params, null if missing.
+	 */
+	private Restriction[] restriction;
+
+	/**
+	 * Restrictions the kernel was compiled from.
+	 */
+	private Map<String, Restriction> compiledFrom;
+
+	InfectionKernel(EpisimConfigGroup episimConfig) {
+		this.episimConfig = episimConfig;
+		this.index.defaultReturnValue(-1);
+	}
+
+	/**
+	 * Compiles the kernel for the restrictions of a day.
+	 */
+	void update(Map<String, Restriction> restrictions) {
+
+		EpisimConfigGroup.InfectionParams[] params = episimConfig.getInfectionParams().toArray(new EpisimConfigGroup.InfectionParams[0]);
+
+		n = params.length;
+		index.clear();
+		restriction = new Restriction[n];
+		for (int i = 0; i < n; i++) {
+			index.put(params[i], i);
+			Restriction r = restrictions.get(params[i].getContainerName());
+			restriction[i] = r != null ? Restriction.clone(r) : null;
+		}
+
+		ciCorrection = new double[n * n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (restriction[i] == null || restriction[j] == null)
+					ciCorrection[i * n + j] = Double.NaN;
+				else
+					ciCorrection[i * n + j] = Math.min(restriction[i].getCiCorrection(), restriction[j].getCiCorrection());
+			}
+		}
+
+		compiledFrom = restrictions;
+	}
+
+	/**
+	 * Returns the contact intensity correction of two activities.
+	 */
+	double getCiCorrection(EpisimConfigGroup.InfectionParams act1, EpisimConfigGroup.InfectionParams act2, Map<String, Restriction> restrictions) {
+		if (restrictions == compiledFrom) {
+			int i = index.getInt(act1);
+			int j = index.getInt(act2);
+			if (i != -1 && j != -1 && !Double.isNaN(ciCorrection[i * n + j]))
+				return ciCorrection[i * n + j];
+		}
+
+		// ci corr can not be null, because sim is initialized with non null value
+		return Math.min(restrictions.get(act1.getContainerName()).getCiCorrection(), restrictions.get(act2.getContainerName()).getCiCorrection());
+	}
+
+	/**
+	 * Returns the restriction of an activity.
+	 */
+	Restriction getRestriction(EpisimConfigGroup.InfectionParams act, Map<String, Restriction> restrictions) {
+		if (restrictions == compiledFrom) {
+			int i = index.getInt(act);
+			if (i != -1 && restriction[i] != null)
+				return restriction[i];
+		}
+
+		return restrictions.get(act.getContainerName());
+	}
+}
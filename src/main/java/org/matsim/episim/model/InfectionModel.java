@@ -15,6 +15,17 @@ public interface InfectionModel {
 	 */
 	default void setIteration(int iteration) {}
 
+	/**
+	 * Called at the start of an iteration with the restrictions in place for the whole day.
+	 * Models may use this to precompute factors that are constant during the day.
+	 *
+	 * @param iteration    current iteration / day
+	 * @param restrictions restrictions of the day, which must not be changed until the next call
+	 */
+	default void setRestrictionsForIteration(int iteration, Map<String, Restriction> restrictions) {
+		setIteration(iteration);
+	}
+
 	/**
 	 * Calculates the probability that person {@code infector} infects {@code target}.
 	 *
@@ -19,6 +19,7 @@ public final class InfectionModelWithSeasonality implements InfectionModel {
 	private final FaceMaskModel maskModel;
 	private final SplittableRandom rnd;
 	private final EpisimConfigGroup episimConfig;
+	private final InfectionKernel kernel;
 
 	private int iteration;
 
@@ -27,6 +28,7 @@ public final class InfectionModelWithSeasonality implements InfectionModel {
 		this.maskModel = faceMaskModel;
 		this.rnd = rnd;
 		this.episimConfig = ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class);
+		this.kernel = new InfectionKernel(episimConfig);
 	}
 
 	@Override
@@ -34,12 +36,17 @@ public final class InfectionModelWithSeasonality implements InfectionModel {
 		this.iteration = iteration;
 	}
 
+	@Override
+	public void setRestrictionsForIteration(int iteration, Map<String, Restriction> restrictions) {
+		setIteration(iteration);
+		kernel.update(restrictions);
+	}
+
 	@Override
 	public double calcInfectionProbability(EpisimPerson target, EpisimPerson infector, Map<String, Restriction> restrictions,
 										   EpisimConfigGroup.InfectionParams act1, EpisimConfigGroup.InfectionParams act2, double jointTimeInContainer) {
 
-		// ci corr can not be null, because sim is initialized with non null value
-		double ciCorrection = Math.min(restrictions.get(act1.getContainerName()).getCiCorrection(), restrictions.get(act2.getContainerName()).getCiCorrection());
+		double ciCorrection = kernel.getCiCorrection(act1, act2, restrictions);
 		double contactIntensity = Math.min(act1.getContactIntensity(), act2.getContactIntensity());
 
 		// note that for 1pct runs, calibParam is of the order of one, which means that for typical times of 100sec or more,
@@ -47,8 +54,8 @@ public final class InfectionModelWithSeasonality implements InfectionModel {
 		// no effect.  kai, mar'20
 
 		return 1 - Math.exp(-episimConfig.getCalibrationParameter() * contactIntensity * jointTimeInContainer * ciCorrection
-				* maskModel.getWornMask(infector, act2, restrictions.get(act2.getContainerName())).shedding
-				* maskModel.getWornMask(target, act1, restrictions.get(act1.getContainerName())).intake
+				* maskModel.getWornMask(infector, act2, kernel.getRestriction(act2, restrictions)).shedding
+				* maskModel.getWornMask(target, act1, kernel.getRestriction(act1, restrictions)).intake
 				* getIndoorOutdoorFactor(act1, act2)
 		);
 
@@ -20,11 +20,18 @@ public final class InfectionModelWithViralLoad implements InfectionModel {
 
 	private final FaceMaskModel maskModel;
 	private final EpisimConfigGroup episimConfig;
+	private final InfectionKernel kernel;
 
 	@Inject
 	public InfectionModelWithViralLoad(FaceMaskModel faceMaskModel, Config config) {
 		this.maskModel = faceMaskModel;
 		this.episimConfig = ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class);
+		this.kernel = new InfectionKernel(episimConfig);
+	}
+
+	@Override
+	public void setRestrictionsForIteration(int iteration, Map<String, Restriction> restrictions) {
+		kernel.update(restrictions);
 	}
 
 
@@ -32,19 +39,18 @@ public final class InfectionModelWithViralLoad implements InfectionModel {
 	public double calcInfectionProbability(EpisimPerson target, EpisimPerson infector, Map<String, Restriction> restrictions,
 										   EpisimConfigGroup.InfectionParams act1, EpisimConfigGroup.InfectionParams act2, double jointTimeInContainer) {
 
-		// ci corr can not be null, because sim is initialized with non null value
-		double ciCorrection = Math.min(restrictions.get(act1.getContainerName()).getCiCorrection(), restrictions.get(act2.getContainerName()).getCiCorrection());
+		double ciCorrection = kernel.getCiCorrection(act1, act2, restrictions);
 		double contactIntensity = Math.min(act1.getContactIntensity(), act2.getContactIntensity());
 
 		// note that for 1pct runs, calibParam is of the order of one, which means that for typical times of 100sec or more, exp( - 1 * 1 * 100 ) \approx 0, and
 		// thus the infection proba becomes 1.  Which also means that changes in contactIntensity has no effect.  kai, mar'20
 
-		double susceptibility = (double) target.getAttributes().getAttribute(SUSCEPTIBILITY);
-		double infectability = (double) infector.getAttributes().getAttribute(VIRAL_LOAD);
+		double susceptibility = target.getSusceptibility();
+		double infectability = infector.getViralLoad();
 
 		return 1 - Math.exp(-episimConfig.getCalibrationParameter() * susceptibility * infectability * contactIntensity * jointTimeInContainer * ciCorrection
-				* maskModel.getWornMask(infector, act2, restrictions.get(act2.getContainerName())).shedding
-				* maskModel.getWornMask(target, act1, restrictions.get(act1.getContainerName())).intake
+				* maskModel.getWornMask(infector, act2, kernel.getRestriction(act2, restrictions)).shedding
+				* maskModel.getWornMask(target, act1, kernel.getRestriction(act1, restrictions)).intake
 		);
 	}
 }
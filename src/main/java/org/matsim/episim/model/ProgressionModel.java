@@ -23,7 +23,10 @@ package org.matsim.episim.model;
 import org.matsim.episim.EpisimPerson;
 import org.matsim.episim.EpisimReporting;
 
+import javax.annotation.Nullable;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * This class models the {@link org.matsim.episim.EpisimPerson.DiseaseStatus} state transitions at the end of the day.
@@ -42,6 +45,41 @@ public interface ProgressionModel {
 	 */
 	void updateState(EpisimPerson person, int day);
 
+	/**
+	 * Updates the state of all persons at the start of the day, using up to {@code threads} threads.
+	 * See {@link org.matsim.episim.EpisimConfigGroup#getProgressionThreads()}. Models that don't support this update all persons sequentially.
+	 */
+	default void updateStates(List<EpisimPerson> persons, int day, int threads) {
+		for (EpisimPerson person : persons) {
+			updateState(person, day);
+		}
+	}
+
+	/**
+	 * Called at the start of the day for every person, also for persons that are not updated by {@link #updateState(EpisimPerson, int)}.
+	 * Models can use this to discard traceable contacts that are not relevant anymore.
+	 */
+	default void updateContacts(EpisimPerson person, int day) {
+	}
+
+	/**
+	 * Persons scheduled for an update on {@code day}, as set of person id indices. Persons whose disease or quarantine status
+	 * changed since their last update must be updated as well. All other persons would not be affected by {@link #updateState(EpisimPerson, int)}.
+	 * The scheduled persons are removed from the schedule.
+	 *
+	 * @return null if all persons need to be updated
+	 */
+	@Nullable
+	default BitSet getScheduledPersons(int day) {
+		return null;
+	}
+
+	/**
+	 * Called after a person was updated, so that the model can schedule the next update of this person.
+	 */
+	default void afterStateUpdate(EpisimPerson person, int day) {
+	}
+
 	/**
 	 * Called after all state updates for all persons have been done.
 	 */
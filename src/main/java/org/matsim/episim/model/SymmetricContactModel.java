@@ -27,6 +27,7 @@ import org.matsim.core.config.Config;
 import org.matsim.core.gbl.Gbl;
 import org.matsim.episim.*;
 
+import java.util.List;
 import java.util.SplittableRandom;
 
 import static org.matsim.episim.EpisimPerson.DiseaseStatus;
@@ -49,9 +50,10 @@ public final class SymmetricContactModel extends AbstractContactModel {
 	private final boolean traceSusceptible;
 
 	/**
-	 * This buffer is used to store the infection type.
+	 * Whether contacts are selected with geometric skip sampling.
 	 */
-	private final StringBuilder buffer = new StringBuilder();
+	private final boolean geometricSampling;
+
 
 	@Inject
 	/* package */
@@ -61,6 +63,7 @@ public final class SymmetricContactModel extends AbstractContactModel {
 		super(rnd, config, infectionModel, reporting);
 		this.trackingAfterDay = tracingConfig.getPutTraceablePersonsInQuarantineAfterDay();
 		this.traceSusceptible = tracingConfig.getTraceSusceptible();
+		this.geometricSampling = episimConfig.getContactSampling() == EpisimConfigGroup.ContactSampling.geometric;
 	}
 
 	@Override
@@ -80,31 +83,43 @@ public final class SymmetricContactModel extends AbstractContactModel {
 			return;
 		}
 
-		if (!personRelevantForTrackingOrInfectionDynamics(personLeavingContainer, container, getRestrictions(), rnd)) {
+		// start tracking late as possible because of computational costs
+		boolean trackingEnabled = iteration >= trackingAfterDay;
+
+		// without tracking, containers where nothing can happen may be skipped before any random number is drawn
+		if (skipContainers && !trackingEnabled && noInteractionPossible(personLeavingContainer, container)) {
 			return;
 		}
 
-		// start tracking late as possible because of computational costs
-		boolean trackingEnabled = iteration >= trackingAfterDay;
+		if (!personRelevantForTrackingOrInfectionDynamics(personLeavingContainer, container, getRestrictions(), rnd)) {
+			return;
+		}
 
 		EpisimConfigGroup.InfectionParams leavingParams = null;
 
-		for( EpisimPerson contactPerson : container.getPersons() ){
+		int maxPersonsInContainer = container.getMaxGroupSize();
+		Gbl.assertIf( maxPersonsInContainer>1 );
+		// ==1 should not happen because if ever not more than 1 person in container, then method exits already earlier.  ???
+
+		// since every pair of persons interacts only once, there is now a constant interaction probability per pair
+		// if we want superspreading events, then maxInteractions needs to be much larger than 3 or 10.
+		double contactProbability = episimConfig.getMaxContacts() / (maxPersonsInContainer - 1);
+
+		List<EpisimPerson> persons = container.getPersons();
+		int size = persons.size();
+
+		for (int i = nextContact(-1, size, contactProbability); i < size; i = nextContact(i, size, contactProbability)) {
+
+			EpisimPerson contactPerson = persons.get(i);
 
 			// no contact with self, especially no tracing
 			if (personLeavingContainer == contactPerson) {
 				continue;
 			}
 
-			int maxPersonsInContainer = container.getMaxGroupSize();
-			Gbl.assertIf( maxPersonsInContainer>1 );
-			// ==1 should not happen because if ever not more than 1 person in container, then method exits already earlier.  ???
-
-			if ( rnd.nextDouble() >= episimConfig.getMaxContacts()/(maxPersonsInContainer-1) ) {
+			if ( !geometricSampling && rnd.nextDouble() >= contactProbability ) {
 				continue;
 			}
-			// since every pair of persons interacts only once, there is now a constant interaction probability per pair
-			// if we want superspreading events, then maxInteractions needs to be much larger than 3 or 10.
 
 			if (!personRelevantForTrackingOrInfectionDynamics(contactPerson, container, getRestrictions(), rnd)) {
 				continue;
@@ -125,32 +140,28 @@ public final class SymmetricContactModel extends AbstractContactModel {
 					&& contactPerson.getDiseaseStatus() == DiseaseStatus.susceptible)
 				continue;
 
-			String leavingPersonsActivity = personLeavingContainer.getTrajectory().get(personLeavingContainer.getCurrentPositionInTrajectory()).actType;
-			String otherPersonsActivity = contactPerson.getTrajectory().get(contactPerson.getCurrentPositionInTrajectory()).actType;
+			String leavingPersonsActivity = personLeavingContainer.getTrajectoryElement(personLeavingContainer.getCurrentPositionInTrajectory()).actType;
+			String otherPersonsActivity = contactPerson.getTrajectoryElement(contactPerson.getCurrentPositionInTrajectory()).actType;
 
-			StringBuilder infectionType = getInfectionType(buffer, container, leavingPersonsActivity, otherPersonsActivity);
+			ActivityInteractions.Interaction interaction = getInteraction(container, leavingPersonsActivity, otherPersonsActivity);
 
-			double containerEnterTimeOfPersonLeaving = container.getContainerEnteringTime(personLeavingContainer.getPersonId());
-			double containerEnterTimeOfOtherPerson = container.getContainerEnteringTime(contactPerson.getPersonId());
+			double containerEnterTimeOfPersonLeaving = container.getContainerEnteringTime(personLeavingContainer);
+			double containerEnterTimeOfOtherPerson = container.getContainerEnteringTime(contactPerson);
 			double jointTimeInContainer = now - Math.max(containerEnterTimeOfPersonLeaving, containerEnterTimeOfOtherPerson);
 
 			//forbid certain cross-activity interactions, keep track of contacts
 			if (container instanceof InfectionEventHandler.EpisimFacility) {
-				//home can only interact with home, leisure or work
-				if (infectionType.indexOf("home") >= 0 && infectionType.indexOf("leis") == -1 && infectionType.indexOf("work") == -1
-						&& !(leavingPersonsActivity.startsWith("home") && otherPersonsActivity.startsWith("home"))) {
-					continue;
-				} else if (infectionType.indexOf("edu") >= 0 && infectionType.indexOf("work") == -1 && !(leavingPersonsActivity.startsWith("edu") && otherPersonsActivity.startsWith("edu"))) {
-					//edu can only interact with work or edu
+				// home can only interact with home, leisure or work, edu only with work or edu
+				if (!interaction.allowed) {
 					continue;
 				}
 				if (trackingEnabled) {
-					trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, infectionType);
+					trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, interaction);
 				}
 
 				// Only a subset of contacts are reported at the moment
 				// tracking has to be enabled to report more contacts
-				reporting.reportContact(now, personLeavingContainer, contactPerson, container, infectionType, jointTimeInContainer);
+				reporting.reportContact(now, personLeavingContainer, contactPerson, container, interaction.label, jointTimeInContainer);
 			}
 
 			if (!AbstractContactModel.personsCanInfectEachOther(personLeavingContainer, contactPerson)) {
@@ -194,16 +205,36 @@ public final class SymmetricContactModel extends AbstractContactModel {
 				double prob = infectionModel.calcInfectionProbability(personLeavingContainer, contactPerson, getRestrictions(),
 						leavingParams, contactParams, jointTimeInContainer);
 				if (rnd.nextDouble() < prob)
-					infectPerson(personLeavingContainer, contactPerson, now, infectionType, container);
+					infectPerson(personLeavingContainer, contactPerson, now, interaction.label, container);
 
 			} else {
 				double prob = infectionModel.calcInfectionProbability(contactPerson, personLeavingContainer, getRestrictions(),
 						contactParams, leavingParams, jointTimeInContainer);
 
 				if (rnd.nextDouble() < prob)
-					infectPerson(contactPerson, personLeavingContainer, now, infectionType, container);
+					infectPerson(contactPerson, personLeavingContainer, now, interaction.label, container);
 			}
 		}
 	}
 
+	/**
+	 * Position of the next person to consider after position {@code i}.
+	 */
+	private int nextContact(int i, int size, double probability) {
+		return geometricSampling ? nextContact(rnd, i, size, probability) : i + 1;
+	}
+
+	/**
+	 * Position of the next contacted person after position {@code i}, or {@code size} if there is none. The number of skipped persons
+	 * is geometrically distributed, so that each person is contacted independently with {@code probability}.
+	 */
+	static int nextContact(SplittableRandom rnd, int i, int size, double probability) {
+		if (probability >= 1)
+			return i + 1;
+		if (probability <= 0)
+			return size;
+
+		double skip = Math.floor(Math.log(1 - rnd.nextDouble()) / Math.log1p(-probability));
+		return skip >= size - i - 1 ? size : i + 1 + (int) skip;
+	}
 }
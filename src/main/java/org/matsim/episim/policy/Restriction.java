@@ -89,7 +89,10 @@ public final class Restriction {
 		this.remainingFraction = remainingFraction;
 		this.ciCorrection = ciCorrection;
 		this.maxGroupSize = maxGroupSize;
-		this.maskUsage.putAll(other != null ? other.maskUsage : maskUsage);
+		Map<FaceMask, Double> masks = other != null ? other.maskUsage : maskUsage;
+		// opened restrictions have no mask usage
+		if (masks != null)
+			this.maskUsage.putAll(masks);
 	}
 
 	/**
@@ -192,7 +195,7 @@ public final class Restriction {
 	/**
 	 * Creates a copy of a restriction.
 	 */
-	static Restriction clone(Restriction restriction) {
+	public static Restriction clone(Restriction restriction) {
 		return new Restriction(restriction.remainingFraction, restriction.ciCorrection, restriction.maxGroupSize,null, restriction);
 	}
 
@@ -134,6 +134,8 @@ public class RunParallel<T> implements Callable<Integer> {
 			log.info("Reading base scenario...");
 			scenario = ScenarioUtils.loadScenario(baseConfig);
 			replay = new ReplayHandler(episimBase, scenario);
+			// every run initializes itself from the same events
+			replay.setShared(true);
 		}
 
 		int i = 0;
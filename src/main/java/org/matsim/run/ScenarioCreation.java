@@ -35,7 +35,8 @@ import picocli.CommandLine;
 		usageHelpWidth = 120,
 		subcommands = {CommandLine.HelpCommand.class, AutoComplete.GenerateCompletion.class, RunTrial.class,
 				DistrictLookup.class, SplitHomeFacilities.class,
-				ConvertPersonAttributes.class, FilterEvents.class, MergeEvents.class, DownSampleScenario.class}
+				ConvertPersonAttributes.class, FilterEvents.class, MergeEvents.class, DownSampleScenario.class,
+				CreatePopulationCache.class}
 )
 public class ScenarioCreation implements Runnable {
 
@@ -101,6 +101,8 @@ public class OpenLosAngelesScenario extends AbstractModule {
 		String url = "https://svn.vsp.tu-berlin.de/repos/public-svn/matsim/scenarios/countries/us/los-angeles/los-angeles-v1.0/output/los-angeles-v1.1-1pct/los-angeles-v1.1-1pct.output_events.xml.gz";
 
 		episimConfig.setInputEventsFile(url);
+		// these are the full matsim output events, most of them are not needed
+		episimConfig.setFilterInputEvents(true);
 
 		episimConfig.setFacilitiesHandling(EpisimConfigGroup.FacilitiesHandling.bln);
 		episimConfig.setSampleSize(0.01);
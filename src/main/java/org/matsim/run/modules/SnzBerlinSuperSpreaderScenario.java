@@ -29,8 +29,8 @@ import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.config.groups.VspExperimentalConfigGroup;
 import org.matsim.core.controler.ControlerUtils;
-import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.episim.EpisimConfigGroup;
+import org.matsim.episim.PopulationCache;
 import org.matsim.episim.model.ContactModel;
 import org.matsim.episim.model.InfectionModel;
 import org.matsim.episim.model.InfectionModelWithViralLoad;
@@ -154,7 +154,7 @@ public class SnzBerlinSuperSpreaderScenario extends AbstractSnzScenario2020 {
 
 		ControlerUtils.checkConfigConsistencyAndWriteToLog(config, "before loading scenario");
 
-		final Scenario scenario = ScenarioUtils.loadScenario(config);
+		final Scenario scenario = PopulationCache.loadScenario(config);
 
 		SplittableRandom rnd = new SplittableRandom(4715);
 		for (Person person : scenario.getPopulation().getPersons().values()) {
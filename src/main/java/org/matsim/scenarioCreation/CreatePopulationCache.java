@@ -0,0 +1,75 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.scenarioCreation;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.episim.PopulationCache;
+import picocli.CommandLine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Creates the binary {@link PopulationCache} next to population files, which is then used by episim instead of the xml.
+ */
+@CommandLine.Command(
+		name = "createPopulationCache",
+		description = "Creates a binary cache of the population containing only the attributes needed by episim.",
+		mixinStandardHelpOptions = true
+)
+public class CreatePopulationCache implements Callable<Integer> {
+
+	private static final Logger log = LogManager.getLogger(CreatePopulationCache.class);
+
+	@CommandLine.Parameters(paramLabel = "file", arity = "1..*", description = "Path to population files")
+	private List<Path> input;
+
+	public static void main(String[] args) {
+		System.exit(new CommandLine(new CreatePopulationCache()).execute(args));
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		for (Path file : input) {
+			if (!Files.exists(file)) {
+				log.error("Input does not exist: {}", file);
+				return 2;
+			}
+		}
+
+		for (Path file : input) {
+
+			log.info("Reading population {}", file);
+			Population population = PopulationUtils.readPopulation(file.toString());
+
+			Path cache = PopulationCache.create(file, population);
+			log.info("Written cache for {} persons to {} ({} MB)", population.getPersons().size(), cache, Files.size(cache) / (1024 * 1024));
+		}
+
+		return 0;
+	}
+}
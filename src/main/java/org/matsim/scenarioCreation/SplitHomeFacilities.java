@@ -86,6 +86,8 @@ public class SplitHomeFacilities implements Callable<Integer> {
 		config.plans().setInputFile(population.toString());
 
 		EpisimConfigGroup episimConfig = ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class);
+		// events are written again and need to retain their coordinates
+		episimConfig.setEventStorage(EpisimConfigGroup.EventStorage.full);
 
 		if (!Files.exists(population)) {
 			log.error("Input population file {} does not exists", population);
@@ -55,7 +55,7 @@ public class BenchmarkIteration {
 		// benchmark with event writing
 		// injector.getInstance(EventsManager.class).addHandler(reporting);
 
-		handler.init(replay.getEvents());
+		handler.init(replay.getEvents(), replay.getEventFilter());
 	}
 
 	@Benchmark
@@ -0,0 +1,73 @@
+package org.matsim.episim;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.episim.InfectionEventHandler.EpisimFacility;
+import org.matsim.episim.InfectionEventHandler.EpisimVehicle;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ContainerStatisticsTest {
+
+	@Test
+	public void sameAsSequential() {
+
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		List<EpisimContainer<?>> containers = List.of(
+				new EpisimFacility(Id.create("f1", ActivityFacility.class)),
+				new EpisimFacility(Id.create("f2", ActivityFacility.class)),
+				new EpisimVehicle(Id.create("v1", Vehicle.class)),
+				new EpisimVehicle(Id.create("v2", Vehicle.class))
+		);
+
+		Object2IntMap<EpisimContainer<?>> groupSize = new Object2IntOpenHashMap<>();
+		Object2IntMap<EpisimContainer<?>> containerSize = new Object2IntOpenHashMap<>();
+		Object2IntMap<EpisimContainer<?>> maxGroupSize = new Object2IntOpenHashMap<>();
+		Map<EpisimContainer<?>, Object2IntMap<String>> activityUsage = new HashMap<>();
+
+		Object2IntMap<EpisimContainer<?>> mergedGroupSize = new Object2IntOpenHashMap<>();
+		Object2IntMap<EpisimContainer<?>> mergedContainerSize = new Object2IntOpenHashMap<>();
+		Object2IntMap<EpisimContainer<?>> mergedMaxGroupSize = new Object2IntOpenHashMap<>();
+		Map<EpisimContainer<?>, Object2IntMap<String>> mergedActivityUsage = new HashMap<>();
+
+		for (int day = 0; day < 7; day++) {
+
+			ContainerStatistics stats = new ContainerStatistics();
+
+			for (int i = 0; i < 50; i++) {
+				EpisimContainer<?> container = containers.get(rnd.nextInt(containers.size()));
+				boolean facility = container instanceof EpisimFacility;
+
+				if (rnd.nextBoolean()) {
+					maxGroupSize.mergeInt(container, groupSize.mergeInt(container, 1, Integer::sum), Integer::max);
+					containerSize.mergeInt(container, 1, Integer::sum);
+					stats.enter(container);
+				} else {
+					String actType = facility ? "work" : "tr";
+					if (facility && groupSize.getOrDefault(container, 0) == 0) {
+						groupSize.put(container, 1);
+						maxGroupSize.mergeInt(container, 1, Integer::sum);
+					}
+
+					groupSize.mergeInt(container, -1, Integer::sum);
+					activityUsage.computeIfAbsent(container, k -> new Object2IntOpenHashMap<>()).mergeInt(actType, 1, Integer::sum);
+					stats.leave(container, actType, facility);
+				}
+			}
+
+			stats.mergeInto(mergedGroupSize, mergedMaxGroupSize, mergedContainerSize, mergedActivityUsage);
+
+			assertThat(mergedGroupSize).isEqualTo(groupSize);
+			assertThat(mergedMaxGroupSize).isEqualTo(maxGroupSize);
+			assertThat(mergedContainerSize).isEqualTo(containerSize);
+			assertThat(mergedActivityUsage).isEqualTo(activityUsage);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DeltaEventListTest {
+
+	private static Event end(double time, String person, String facility) {
+		return new ActivityEndEvent(time, Id.createPersonId(person), Id.createLinkId("l"), Id.create(facility, ActivityFacility.class), "home");
+	}
+
+	private static Event start(double time, String person, String facility) {
+		return new ActivityStartEvent(time, Id.createPersonId(person), Id.createLinkId("l"), Id.create(facility, ActivityFacility.class), "work", null);
+	}
+
+	private static LeanEventList list(Event... events) {
+		LeanEventList list = new LeanEventList(null);
+		for (Event event : events) {
+			list.add(event);
+		}
+		list.trim();
+		return list;
+	}
+
+	private static void assertSameEvents(List<Event> actual, List<Event> expected) {
+		assertThat(actual).hasSameSizeAs(expected);
+
+		List<Event> it = new ArrayList<>(actual);
+
+		for (int i = 0; i < expected.size(); i++) {
+			assertThat(actual.get(i).getAttributes()).isEqualTo(expected.get(i).getAttributes());
+			assertThat(it.get(i).getAttributes()).isEqualTo(expected.get(i).getAttributes());
+		}
+	}
+
+	@Test
+	public void changedPersons() {
+
+		LeanEventList base = list(end(1, "p1", "h1"), end(2, "p2", "h2"), start(3, "p1", "w1"),
+				end(4, "p3", "h3"), start(5, "p2", "w2"), start(6, "p3", "w1"));
+
+		LeanEventList day = list(end(1, "p1", "h1"), new GenericEvent("departure", 1.5), end(2, "p2", "h2"), start(3, "p1", "w1"),
+				end(4, "p3", "h3"), start(5, "p2", "w3"), start(6, "p3", "w1"));
+
+		DeltaEventList delta = DeltaEventList.create(base, day);
+
+		assertThat(delta.getChangedPersons().cardinality()).isEqualTo(1);
+		assertThat(delta.getChangedPersons().get(Id.createPersonId("p2").index())).isTrue();
+		assertThat(delta.getDeltaSize()).isEqualTo(3);
+		assertThat(delta.isDelta(1)).isTrue();
+		assertThat(delta.isDelta(0)).isFalse();
+
+		assertSameEvents(delta, day);
+	}
+
+	@Test
+	public void reordered() {
+
+		LeanEventList base = list(end(1, "p1", "h1"), end(1, "p2", "h2"), start(2, "p1", "w1"), start(2, "p2", "w1"));
+		LeanEventList day = list(end(1, "p2", "h2"), end(1, "p1", "h1"), start(2, "p1", "w1"), start(2, "p2", "w1"));
+
+		DeltaEventList delta = DeltaEventList.create(base, day);
+
+		// events of both persons are identical, but the order can not be reconstructed
+		assertThat(delta.getChangedPersons().cardinality()).isGreaterThan(0);
+		assertSameEvents(delta, day);
+
+		Id<Person> p3 = Id.createPersonId("p3");
+		LeanEventList added = list(end(1, "p1", "h1"), end(1, "p2", "h2"), start(2, "p1", "w1"), start(2, "p2", "w1"),
+				new ActivityEndEvent(3, p3, Id.createLinkId("l"), null, "home"));
+
+		delta = DeltaEventList.create(base, added);
+		assertThat(delta.getDeltaSize()).isEqualTo(1);
+		assertSameEvents(delta, added);
+	}
+}
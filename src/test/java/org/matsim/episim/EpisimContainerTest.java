@@ -0,0 +1,153 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.facilities.ActivityFacility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EpisimContainerTest {
+
+	@Test
+	public void addAndRemove() {
+
+		InfectionEventHandler.EpisimFacility container = EpisimTestUtils.createFacility();
+
+		List<EpisimPerson> persons = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			EpisimPerson p = EpisimTestUtils.createPerson("work", null);
+			container.addPerson(p, i);
+			persons.add(p);
+		}
+
+		container.removePerson(persons.get(0));
+		container.removePerson(persons.get(5));
+		container.removePerson(persons.get(7));
+
+		assertThat(container.getPersons())
+				.hasSize(7)
+				.containsExactly(persons.get(1), persons.get(2), persons.get(3), persons.get(4), persons.get(6), persons.get(8), persons.get(9));
+
+		assertThat(container.getContainerEnteringTime(persons.get(8))).isEqualTo(8);
+		assertThat(container.getContainerEnteringTime(persons.get(8).getPersonId())).isEqualTo(8);
+		assertThat(container.getContainerEnteringTime(persons.get(5))).isEqualTo(Double.NEGATIVE_INFINITY);
+
+		// triggers compaction
+		for (int i : new int[]{1, 2, 3, 4}) {
+			container.removePerson(persons.get(i));
+		}
+
+		assertThat(container.getPersons()).containsExactly(persons.get(6), persons.get(8), persons.get(9));
+		assertThat(container.getPersons().get(1)).isSameAs(persons.get(8));
+		assertThat(container.getContainerEnteringTime(persons.get(9))).isEqualTo(9);
+
+		assertThat(container.indexOf(persons.get(9))).isEqualTo(2);
+		assertThat(container.indexOf(persons.get(1))).isEqualTo(-1);
+
+		container.addPerson(persons.get(0), 20);
+		assertThat(container.getPersons()).containsExactly(persons.get(6), persons.get(8), persons.get(9), persons.get(0));
+		assertThat(container.getContainerEnteringTime(persons.get(0))).isEqualTo(20);
+	}
+
+	@Test
+	public void swapRemove() {
+
+		InfectionEventHandler.EpisimFacility container = new InfectionEventHandler.EpisimFacility(Id.create("unordered", ActivityFacility.class), false);
+
+		List<EpisimPerson> persons = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			EpisimPerson p = EpisimTestUtils.createPerson("work", null);
+			container.addPerson(p, i);
+			persons.add(p);
+		}
+
+		// last person takes the place of the removed one
+		container.removePerson(persons.get(1));
+		assertThat(container.getPersons()).containsExactly(persons.get(0), persons.get(4), persons.get(2), persons.get(3));
+		assertThat(container.indexOf(persons.get(4))).isEqualTo(1);
+		assertThat(container.getContainerEnteringTime(persons.get(4))).isEqualTo(4);
+
+		container.removePerson(persons.get(3));
+		assertThat(container.getPersons()).containsExactly(persons.get(0), persons.get(4), persons.get(2));
+		assertThat(container.getPersons().get(2)).isSameAs(persons.get(2));
+
+		container.removePerson(persons.get(0));
+		container.addPerson(persons.get(1), 10);
+		assertThat(container.getPersons()).containsExactly(persons.get(2), persons.get(4), persons.get(1));
+		assertThat(container.getContainerEnteringTime(persons.get(1))).isEqualTo(10);
+		assertThat(container.getContainerEnteringTime(persons.get(2))).isEqualTo(2);
+	}
+
+	@Test
+	public void randomAccessKeepsSlots() {
+
+		InfectionEventHandler.EpisimFacility container = new InfectionEventHandler.EpisimFacility(Id.create("slots", ActivityFacility.class), true);
+
+		List<EpisimPerson> persons = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			EpisimPerson p = EpisimTestUtils.createPerson("work", null);
+			container.addPerson(p, i);
+			persons.add(p);
+		}
+
+		List<EpisimPerson> entered = new ArrayList<>(persons);
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		// persons leave like in the contact models, which look up the leaving person and draw others before the removal
+		for (int n = 0; n < 49; n++) {
+			EpisimPerson leaving = persons.get(rnd.nextInt(persons.size()));
+			int index = persons.indexOf(leaving);
+
+			assertThat(container.indexOf(leaving)).isEqualTo(index);
+			for (int i = 0; i < 5; i++) {
+				int other = rnd.nextInt(persons.size());
+				assertThat(container.getPersons().get(other)).isSameAs(persons.get(other));
+			}
+
+			container.removePerson(leaving);
+			persons.remove(index);
+
+			// less than half of the slots are empty, so the remaining persons keep their slots
+			for (EpisimPerson p : persons) {
+				assertThat(p.getContainerSlot()).isEqualTo(entered.indexOf(p));
+			}
+		}
+
+		assertThat(container.getPersons()).containsExactlyElementsOf(persons);
+		for (int i = 0; i < persons.size(); i++) {
+			assertThat(container.getPersons().get(i)).isSameAs(persons.get(i));
+			assertThat(container.indexOf(persons.get(i))).isEqualTo(i);
+		}
+	}
+
+	@Test
+	public void statusCount() {
+
+		InfectionEventHandler.EpisimFacility container = EpisimTestUtils.createFacility();
+
+		EpisimPerson a = EpisimTestUtils.createPerson("work", container);
+		EpisimPerson b = EpisimTestUtils.createPerson("work", container);
+		EpisimPerson c = EpisimTestUtils.createPerson("work", null);
+
+		assertThat(container.getNumberOfPersons(EpisimPerson.DiseaseStatus.susceptible)).isEqualTo(2);
+
+		a.setDiseaseStatus(0, EpisimPerson.DiseaseStatus.contagious);
+		c.setDiseaseStatus(0, EpisimPerson.DiseaseStatus.contagious);
+
+		assertThat(container.getNumberOfPersons(EpisimPerson.DiseaseStatus.susceptible)).isEqualTo(1);
+		assertThat(container.getNumberOfPersons(EpisimPerson.DiseaseStatus.contagious)).isEqualTo(1);
+
+		container.addPerson(c, 0);
+		container.removePerson(b);
+
+		assertThat(container.getNumberOfPersons(EpisimPerson.DiseaseStatus.susceptible)).isEqualTo(0);
+		assertThat(container.getNumberOfPersons(EpisimPerson.DiseaseStatus.contagious)).isEqualTo(2);
+
+		container.clearPersons();
+		assertThat(container.getNumberOfPersons(EpisimPerson.DiseaseStatus.contagious)).isEqualTo(0);
+	}
+}
@@ -3,12 +3,15 @@ package org.matsim.episim;
 import org.junit.Test;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
+import org.matsim.episim.model.InfectionModelWithViralLoad;
+import org.matsim.utils.objectattributes.attributable.Attributes;
 
 import java.io.*;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class EpisimPersonTest {
 
@@ -92,4 +95,41 @@ public class EpisimPersonTest {
 				.isEqualTo(EpisimPerson.DiseaseStatus.showingSymptoms);
 
 	}
+
+	@Test
+	public void cachedAttributes() {
+
+		EpisimPersonStore store = new EpisimPersonStore(2);
+		EpisimPerson p1 = new EpisimPerson(Id.createPersonId("p1"), new Attributes(), true, null, store, 0);
+		EpisimPerson p2 = new EpisimPerson(Id.createPersonId("p2"), new Attributes(), true, null, store, 1);
+
+		p1.getAttributes().putAttribute("microm:modeled:age", 42);
+		p1.getAttributes().putAttribute("homeId", "h1");
+		p1.getAttributes().putAttribute("district", "Mitte");
+		p1.getAttributes().putAttribute(InfectionModelWithViralLoad.VIRAL_LOAD, 2.5);
+		p1.getAttributes().putAttribute(InfectionModelWithViralLoad.SUSCEPTIBILITY, 0.5);
+		p2.getAttributes().putAttribute("homeId", "h1");
+		p2.getAttributes().putAttribute("ageGroup", "18-25");
+
+		// read from attributes before caching
+		assertThat(p1.getAge()).isEqualTo(42);
+		assertThat(p1.isSameHome(p2)).isTrue();
+
+		p1.cacheAttributes();
+		p2.cacheAttributes();
+		p1.getAttributes().putAttribute("district", "Spandau");
+
+		assertThat(p1.getAge()).isEqualTo(42);
+		assertThat(p1.getDistrict()).isEqualTo("Mitte");
+		assertThat(p2.getDistrict()).isNull();
+		assertThat(p1.getViralLoad()).isEqualTo(2.5);
+		assertThat(p1.getSusceptibility()).isEqualTo(0.5);
+
+		// invalid or missing values fail only when used
+		assertThatThrownBy(p2::getAge).isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(p2::getViralLoad).isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(p2::getSusceptibility).isInstanceOf(IllegalStateException.class);
+		assertThat(p1.getHomeId()).isEqualTo("h1");
+		assertThat(p1.isSameHome(p2)).isTrue();
+	}
 }
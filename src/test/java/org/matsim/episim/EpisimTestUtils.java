@@ -1,6 +1,7 @@
 package org.matsim.episim;
 
 import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.facilities.ActivityFacility;
@@ -110,6 +111,13 @@ public class EpisimTestUtils {
 		return new EpisimPerson(Id.createPersonId(ID.getAndIncrement()), new Attributes(), reporting);
 	}
 
+	/**
+	 * Create a person with given id and specific reporting.
+	 */
+	public static EpisimPerson createPerson(Id<Person> id, EpisimReporting reporting) {
+		return new EpisimPerson(id, new Attributes(), reporting);
+	}
+
 	/**
 	 * Add persons to a facility.
 	 */
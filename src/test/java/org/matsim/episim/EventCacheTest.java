@@ -0,0 +1,68 @@
+package org.matsim.episim;
+
+import com.google.common.hash.HashCode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.facilities.ActivityFacility;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readWrite() throws IOException {
+
+		Path input = folder.newFile("events.xml.gz").toPath();
+		Files.writeString(input, "content");
+
+		HashCode hash = EventCache.hash(input);
+		Path cache = EventCache.getCachePath(input.toString());
+
+		List<Event> events = List.of(
+				new ActivityEndEvent(10, Id.createPersonId("p1"), Id.createLinkId("l1"), Id.create("f1", ActivityFacility.class), "home"),
+				new GenericEvent("ignored", 20),
+				new PersonEntersVehicleEvent(30.5, Id.createPersonId("p1"), Id.createVehicleId("v1")),
+				new PersonLeavesVehicleEvent(40, Id.createPersonId("p1"), Id.createVehicleId("v1")),
+				new ActivityStartEvent(50, Id.createPersonId("p1"), Id.createLinkId("l2"), null, "work", null)
+		);
+
+		EventCache.write(cache, input.toString(), hash, events);
+
+		assertThat(EventCache.isValid(cache, input.toString(), hash)).isTrue();
+
+		List<Event> read = new ArrayList<>();
+		EventCache.read(cache, read::add);
+
+		assertThat(read).hasSize(4);
+		assertThat(read.get(0)).isInstanceOf(ActivityEndEvent.class);
+		assertThat(((ActivityEndEvent) read.get(0)).getFacilityId()).isEqualTo(Id.create("f1", ActivityFacility.class));
+		assertThat(read.get(1).getTime()).isEqualTo(30.5);
+		assertThat(((PersonLeavesVehicleEvent) read.get(2)).getVehicleId()).isEqualTo(Id.createVehicleId("v1"));
+
+		ActivityStartEvent start = (ActivityStartEvent) read.get(3);
+		assertThat(start.getActType()).isSameAs("work");
+		assertThat(start.getFacilityId()).isNull();
+
+		List<Event> mapped = EventCache.map(cache, null);
+		assertThat(mapped).hasSize(4);
+		assertThat(mapped.get(3).getAttributes()).isEqualTo(start.getAttributes());
+		assertThat(mapped.get(1).getAttributes()).isEqualTo(read.get(1).getAttributes());
+
+		// cache is invalid as soon as the content changes
+		Files.writeString(input, "changed");
+		assertThat(EventCache.isValid(cache, input.toString(), EventCache.hash(input))).isFalse();
+	}
+
+}
@@ -0,0 +1,61 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.population.Person;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventFilterTest {
+
+	@Test
+	public void persons() {
+
+		Id.createPersonId("p1");
+		Id.createPersonId("pt_pt_1");
+		Id.createPersonId("rt1");
+
+		EventFilter filter = new EventFilter(Collections.emptyList());
+
+		assertThat(filter.shouldHandlePerson(Id.createPersonId("p1"))).isTrue();
+		assertThat(filter.shouldHandlePerson(Id.createPersonId("pt_pt_1"))).isFalse();
+		assertThat(filter.shouldHandleActivity(Id.createPersonId("pt_pt_1"), "work")).isTrue();
+		assertThat(filter.shouldHandleActivity(Id.createPersonId("rt1"), "work")).isFalse();
+		assertThat(filter.shouldHandleActivity(Id.createPersonId("p1"), "work")).isTrue();
+
+		// ids created after the filter are decided directly
+		assertThat(filter.shouldHandlePerson(Id.createPersonId("pt_tr_filter"))).isFalse();
+		assertThat(filter.shouldHandlePerson(Id.createPersonId("drt_filter"))).isFalse();
+		assertThat(filter.shouldHandlePerson(Id.createPersonId("p_filter"))).isTrue();
+	}
+
+	@Test
+	public void activityTypes() {
+
+		Id<Person> p = Id.createPersonId("p1");
+		String stage = "pt interaction";
+		List<Event> events = List.of(
+				new ActivityStartEvent(0, p, null, null, "work", null),
+				new ActivityStartEvent(0, p, null, null, stage, null)
+		);
+
+		EventFilter filter = new EventFilter(List.of(events, events));
+
+		assertThat(filter.isStageActivity("work")).isFalse();
+		assertThat(filter.isStageActivity(stage)).isTrue();
+		assertThat(filter.shouldHandleActivity(p, stage)).isFalse();
+
+		// types not in the events, or other instances of the same type
+		assertThat(filter.isStageActivity(new String("car interaction"))).isTrue();
+		assertThat(filter.isStageActivity(new String("work"))).isFalse();
+
+		assertThat(EventFilter.handlesActivity("p1", stage)).isFalse();
+		assertThat(EventFilter.handlesActivity("drt1", "work")).isFalse();
+		assertThat(EventFilter.handlesPerson("pt_pt_1")).isFalse();
+	}
+}
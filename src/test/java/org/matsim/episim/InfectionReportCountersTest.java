@@ -0,0 +1,74 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InfectionReportCountersTest {
+
+	@Test
+	public void sameAsCounting() {
+
+		EpisimPersonStore store = new EpisimPersonStore(100);
+		List<EpisimPerson> persons = new ArrayList<>();
+
+		for (int i = 0; i < 100; i++) {
+			Attributes attrs = new Attributes();
+			if (i % 3 != 0)
+				attrs.putAttribute("district", i % 3 == 1 ? "a" : "b");
+
+			EpisimPerson p = new EpisimPerson(Id.createPersonId("counters" + i), attrs, true, null, store, i);
+			p.cacheAttributes();
+			persons.add(p);
+		}
+
+		SplittableRandom rnd = new SplittableRandom(1);
+		EpisimPerson.DiseaseStatus[] status = EpisimPerson.DiseaseStatus.values();
+		EpisimPerson.QuarantineStatus[] quarantine = EpisimPerson.QuarantineStatus.values();
+
+		// some persons are infected before counters are created
+		for (int i = 0; i < 20; i++) {
+			store.status[rnd.nextInt(persons.size())] = (byte) EpisimPerson.DiseaseStatus.recovered.ordinal();
+		}
+
+		store.reportCounters = new InfectionReportCounters(persons, store.getCapacity());
+
+		// districts in order of occurrence
+		assertThat(store.reportCounters.getNumberOfDistricts()).isEqualTo(3);
+		assertThat(store.reportCounters.getName(0)).isEqualTo("unknown");
+		assertThat(store.reportCounters.getName(1)).isEqualTo("a");
+		assertThat(store.reportCounters.getName(2)).isEqualTo("b");
+
+		for (int i = 0; i < 200; i++) {
+
+			EpisimPerson p = persons.get(rnd.nextInt(persons.size()));
+			if (rnd.nextBoolean())
+				p.setDiseaseStatus(i * 3600, status[rnd.nextInt(status.length)], false);
+			else
+				p.setQuarantineStatus(quarantine[rnd.nextInt(quarantine.length)], i);
+
+			for (int d = 0; d < store.reportCounters.getNumberOfDistricts(); d++) {
+				String name = store.reportCounters.getName(d);
+				List<EpisimPerson> district = new ArrayList<>();
+				for (EpisimPerson x : persons) {
+					if (name.equals(x.getDistrict() == null ? "unknown" : x.getDistrict()))
+						district.add(x);
+				}
+
+				for (EpisimPerson.DiseaseStatus s : status) {
+					assertThat(store.reportCounters.get(d, s))
+							.isEqualTo(district.stream().filter(x -> x.getDiseaseStatus() == s).count());
+				}
+
+				assertThat(store.reportCounters.getInQuarantine(d))
+						.isEqualTo(district.stream().filter(x -> x.getQuarantineStatus() != EpisimPerson.QuarantineStatus.no).count());
+			}
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.facilities.ActivityFacility;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LeanEventListTest {
+
+	@Test
+	public void addAndGet() {
+
+		LeanEventList list = new LeanEventList(null);
+
+		GenericEvent other = new GenericEvent("departure", 5);
+
+		list.add(new ActivityEndEvent(1, Id.createPersonId("p1"), Id.createLinkId("l1"), Id.create("f1", ActivityFacility.class), new String("home")));
+		list.add(other);
+		list.add(new PersonEntersVehicleEvent(10.5, Id.createPersonId("p1"), Id.createVehicleId("v1")));
+		list.add(new ActivityStartEvent(20, Id.createPersonId("p1"), Id.createLinkId("l2"), null, "work", null));
+		list.trim();
+
+		assertThat(list).hasSize(4);
+
+		ActivityEndEvent end = (ActivityEndEvent) list.get(0);
+		assertThat(end.getPersonId()).isEqualTo(Id.createPersonId("p1"));
+		assertThat(end.getLinkId()).isEqualTo(Id.createLinkId("l1"));
+		assertThat(end.getFacilityId()).isEqualTo(Id.create("f1", ActivityFacility.class));
+		assertThat(end.getActType()).isSameAs("home");
+
+		assertThat(list.get(1)).isSameAs(other);
+
+		PersonEntersVehicleEvent enter = (PersonEntersVehicleEvent) list.get(2);
+		assertThat(enter.getTime()).isEqualTo(10.5);
+		assertThat(enter.getVehicleId()).isEqualTo(Id.createVehicleId("v1"));
+
+		ActivityStartEvent start = (ActivityStartEvent) list.get(3);
+		assertThat(start.getFacilityId()).isNull();
+		assertThat(start.getCoord()).isNull();
+		assertThat(start.getActType()).isEqualTo("work");
+	}
+
+}
@@ -0,0 +1,70 @@
+package org.matsim.episim;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PopulationCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Population createPopulation() {
+		return ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation();
+	}
+
+	@Test
+	public void readWrite() throws IOException {
+
+		Path input = folder.newFile("population.xml.gz").toPath();
+		Files.writeString(input, "content");
+
+		Population population = createPopulation();
+
+		Person p1 = population.getFactory().createPerson(Id.createPersonId("p1"));
+		p1.getAttributes().putAttribute("homeId", "h1");
+		p1.getAttributes().putAttribute("district", "Mitte");
+		p1.getAttributes().putAttribute("microm:modeled:age", 42);
+		p1.getAttributes().putAttribute("homeX", 1.5);
+		p1.getAttributes().putAttribute("income", 1000);
+		population.addPerson(p1);
+
+		Person p2 = population.getFactory().createPerson(Id.createPersonId("p2"));
+		p2.getAttributes().putAttribute("homeId", "h1");
+		population.addPerson(p2);
+
+		Path cache = PopulationCache.create(input, population);
+		assertThat(PopulationCache.isValid(cache, input, EventCache.hash(input))).isTrue();
+
+		Population read = createPopulation();
+		PopulationCache.read(cache, read);
+
+		assertThat(read.getPersons()).containsOnlyKeys(Id.createPersonId("p1"), Id.createPersonId("p2"));
+
+		Person r1 = read.getPersons().get(Id.createPersonId("p1"));
+		assertThat(r1.getAttributes().getAttribute("homeId")).isEqualTo("h1");
+		assertThat(r1.getAttributes().getAttribute("district")).isEqualTo("Mitte");
+		assertThat(r1.getAttributes().getAttribute("microm:modeled:age")).isEqualTo(42);
+		assertThat(r1.getAttributes().getAttribute("homeX")).isEqualTo(1.5);
+		assertThat(r1.getAttributes().getAttribute("income")).isNull();
+
+		Person r2 = read.getPersons().get(Id.createPersonId("p2"));
+		assertThat(r2.getAttributes().getAsMap()).containsOnlyKeys("homeId");
+
+		// cache is invalid as soon as the content changes
+		Files.writeString(input, "changed");
+		assertThat(PopulationCache.isValid(cache, input, EventCache.hash(input))).isFalse();
+	}
+
+}
@@ -0,0 +1,120 @@
+package org.matsim.episim;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReplayProgramTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Times of all executed instructions.
+	 */
+	private static List<Double> executedTimes(ReplayProgram program) {
+		List<Double> times = new ArrayList<>();
+		program.execute((p, i) -> times.add(p.getTime(i)));
+		return times;
+	}
+
+	@Test
+	public void compileAndExecute() {
+
+		ReplayProgram program = new ReplayProgram();
+
+		// more instructions than the initial capacity
+		for (int i = 0; i < 2000; i++) {
+			program.add(ReplayProgram.ACTIVITY_END, i % 7, i % 3, i % 2 == 0 ? 1 : -1, i);
+		}
+
+		program.trim();
+
+		assertThat(program.size()).isEqualTo(2000);
+		assertThat(program.length()).isEqualTo(2000);
+		assertThat(program.getBase()).isNull();
+
+		assertThat(program.getOp(1500)).isEqualTo(ReplayProgram.ACTIVITY_END);
+		assertThat(program.getPerson(1500)).isEqualTo(1500 % 7);
+		assertThat(program.getContainer(1500)).isEqualTo(1500 % 3);
+		assertThat(program.getActType(1500)).isEqualTo(1);
+		assertThat(program.getActType(1501)).isEqualTo(-1);
+
+		List<Double> times = executedTimes(program);
+		assertThat(times).hasSize(2000);
+		for (int i = 0; i < times.size(); i++) {
+			assertThat(times.get(i)).isEqualTo((double) i);
+		}
+	}
+
+	@Test
+	public void executeWithBase() {
+
+		ReplayProgram base = new ReplayProgram();
+		for (int i = 0; i < 6; i++) {
+			base.add(ReplayProgram.ENTERS_VEHICLE, i % 3, 0, -1, i + 1);
+		}
+		base.trim();
+
+		// person 1 is changed on this day, all other instructions are the same as in the base
+		ReplayProgram program = new ReplayProgram(true);
+		program.addFromBase();
+		program.add(ReplayProgram.ENTERS_VEHICLE, 1, 0, -1, 10);
+		program.addFromBase();
+		program.addFromBase();
+		program.add(ReplayProgram.LEAVES_VEHICLE, 1, 0, -1, 11);
+		program.addFromBase();
+		program.trim();
+
+		BitSet changed = new BitSet();
+		changed.set(1);
+		program.setBase(base, changed);
+
+		assertThat(program.size()).isEqualTo(2);
+		assertThat(program.length()).isEqualTo(6);
+		assertThat(program.getBase()).isSameAs(base);
+
+		assertThat(executedTimes(program)).containsExactly(1d, 10d, 3d, 4d, 11d, 6d);
+
+		List<Integer> persons = new ArrayList<>();
+		program.execute((p, i) -> persons.add(p.getPerson(i)));
+		assertThat(persons).containsExactly(0, 1, 2, 0, 1, 2);
+	}
+
+	@Test
+	public void mapped() throws IOException {
+
+		ReplayProgram program = new ReplayProgram();
+		for (int i = 0; i < 2000; i++) {
+			program.add(i % 2 == 0 ? ReplayProgram.ACTIVITY_START : ReplayProgram.LEAVES_VEHICLE, i, i * 2, i % 2 == 0 ? i % 5 : -1, i + 0.5);
+		}
+
+		// not trimmed, only the used capacity is mapped
+		program.map(folder.newFile("program.bin").toPath());
+
+		assertThat(program.isMapped()).isTrue();
+		assertThat(program.size()).isEqualTo(2000);
+
+		for (int i = 0; i < 2000; i++) {
+			assertThat(program.getOp(i)).isEqualTo(i % 2 == 0 ? ReplayProgram.ACTIVITY_START : ReplayProgram.LEAVES_VEHICLE);
+			assertThat(program.getPerson(i)).isEqualTo(i);
+			assertThat(program.getContainer(i)).isEqualTo(i * 2);
+			assertThat(program.getActType(i)).isEqualTo(i % 2 == 0 ? i % 5 : -1);
+			assertThat(program.getTime(i)).isEqualTo(i + 0.5);
+		}
+
+		assertThat(executedTimes(program)).hasSize(2000).startsWith(0.5, 1.5);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void noBase() {
+		new ReplayProgram().addFromBase();
+	}
+}
@@ -0,0 +1,64 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SusceptibleIndexTest {
+
+	@Test
+	public void sameAsList() {
+
+		EpisimPersonStore store = new EpisimPersonStore(100);
+		List<EpisimPerson> persons = new ArrayList<>();
+
+		for (int i = 0; i < 100; i++) {
+			Attributes attrs = new Attributes();
+			if (i % 3 != 0)
+				attrs.putAttribute("district", i % 3 == 1 ? "a" : "b");
+
+			EpisimPerson p = new EpisimPerson(Id.createPersonId("index" + i), attrs, true, null, store, i);
+			p.cacheAttributes();
+			persons.add(p);
+		}
+
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		// some persons are infected before index is built
+		for (int i = 0; i < 20; i++) {
+			store.status[rnd.nextInt(persons.size())] = (byte) EpisimPerson.DiseaseStatus.recovered.ordinal();
+		}
+
+		store.susceptibleIndex = new SusceptibleIndex(persons, store.getCapacity());
+
+		for (int i = 0; i < 50; i++) {
+
+			EpisimPerson p = persons.get(rnd.nextInt(persons.size()));
+			store.status[p.getSlot()] = (byte) (rnd.nextBoolean() ? 0 : 1);
+
+			// status is not updated via the person to avoid reporting, index is updated accordingly
+			store.susceptibleIndex.update(p.getSlot(), p.getDiseaseStatus() == EpisimPerson.DiseaseStatus.susceptible);
+
+			for (String district : new String[]{null, "a", "b"}) {
+				List<EpisimPerson> expected = persons.stream()
+						.filter(x -> district == null || district.equals(x.getDistrict()))
+						.filter(x -> x.getDiseaseStatus() == EpisimPerson.DiseaseStatus.susceptible)
+						.collect(Collectors.toList());
+
+				assertThat(store.susceptibleIndex.size(district)).isEqualTo(expected.size());
+				for (int n = 0; n < expected.size(); n++) {
+					assertThat(store.susceptibleIndex.get(district, n)).isSameAs(expected.get(n));
+				}
+			}
+		}
+
+		assertThat(store.susceptibleIndex.size("unknown")).isEqualTo(0);
+	}
+}
@@ -0,0 +1,50 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TrajectoryPoolTest {
+
+	@Test
+	public void deduplicate() {
+
+		EpisimConfigGroup.InfectionParams home = new EpisimConfigGroup.InfectionParams("home");
+		EpisimConfigGroup.InfectionParams work = new EpisimConfigGroup.InfectionParams("work");
+
+		TrajectoryPool pool = new TrajectoryPool();
+
+		int a = pool.add(List.of(new EpisimPerson.Activity("home", home), new EpisimPerson.Activity("work", work)));
+		int b = pool.add(List.of(new EpisimPerson.Activity("home", home), new EpisimPerson.Activity("work", work)));
+		int c = pool.add(List.of(new EpisimPerson.Activity("home", home)));
+
+		assertThat(a).isEqualTo(b);
+		assertThat(c).isNotEqualTo(a);
+		assertThat(pool.getNumberOfTrajectories()).isEqualTo(2);
+
+		assertThat(pool.get(a, 1).actType).isEqualTo("work");
+		assertThat(pool.get(a, 1).params).isSameAs(work);
+		assertThat(pool.get(c, 0).params).isSameAs(home);
+
+		pool.trim();
+		assertThat(pool.get(b, 0).actType).isEqualTo("home");
+	}
+
+	@Test
+	public void sealedPerson() {
+
+		EpisimPerson person = EpisimTestUtils.createPerson("work", null);
+		person.addToTrajectory(new EpisimPerson.Activity("home", EpisimTestUtils.TEST_CONFIG.selectInfectionParams("home")));
+
+		person.sealTrajectory();
+		assertThat(person.getTrajectorySize()).isEqualTo(2);
+		assertThat(person.getTrajectoryElement(1).actType).isEqualTo("home");
+		assertThat(person.getTrajectory()).hasSize(2);
+
+		person.addToTrajectory(person.getTrajectoryElement(0));
+		assertThat(person.getTrajectorySize()).isEqualTo(3);
+		assertThat(person.getTrajectoryElement(2).actType).isEqualTo("work");
+	}
+}
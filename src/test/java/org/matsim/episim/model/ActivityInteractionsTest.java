@@ -0,0 +1,46 @@
+package org.matsim.episim.model;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ActivityInteractionsTest {
+
+	@Test
+	public void rules() {
+
+		ActivityInteractions interactions = new ActivityInteractions();
+
+		assertThat(interactions.get("home", "home").allowed).isTrue();
+		assertThat(interactions.get("home", "leisure").allowed).isTrue();
+		assertThat(interactions.get("home", "work").allowed).isTrue();
+		assertThat(interactions.get("home", "shopping").allowed).isFalse();
+		assertThat(interactions.get("edu", "edu").allowed).isTrue();
+		assertThat(interactions.get("educ_primary", "work").allowed).isTrue();
+		assertThat(interactions.get("leisure", "educ_primary").allowed).isFalse();
+
+		assertThat(interactions.get("work", "leisure").trackable).isTrue();
+		assertThat(interactions.get("shopping", "leisure").trackable).isFalse();
+
+		assertThat(interactions.get("home", "leisure").label).isEqualTo("home_leisure");
+		assertThat(interactions.get("leisure", "home").label).isEqualTo("leisure_home");
+
+		// same instance for same pair, also for equal strings
+		assertThat(interactions.get(new String("home"), "leisure")).isSameAs(interactions.get("home", "leisure"));
+		assertThat(interactions.code(new String("work"))).isEqualTo(interactions.code("work"));
+	}
+
+	@Test
+	public void manyTypes() {
+
+		ActivityInteractions interactions = new ActivityInteractions();
+
+		for (int i = 0; i < 100; i++) {
+			for (int j = 0; j < 100; j += 7) {
+				assertThat(interactions.get("act" + i, "act" + j).label).isEqualTo("act" + i + "_act" + j);
+			}
+		}
+
+		assertThat(interactions.code("act99")).isEqualTo(99);
+	}
+}
@@ -6,11 +6,15 @@ import org.apache.commons.math3.stat.descriptive.moment.Mean;
 import org.assertj.core.data.Percentage;
 import org.junit.Before;
 import org.junit.Test;
+import org.matsim.api.core.v01.Id;
 import org.matsim.episim.*;
 import org.matsim.episim.EpisimPerson.DiseaseStatus;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.SplittableRandom;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -323,5 +327,93 @@ public class ConfigurableProgressionModelTest {
 				.isCloseTo(14, Percentage.withPercentage(1));
 	}
 
+	@Test
+	public void parallelUpdates() {
+
+		tracingConfig.setPutTraceablePersonsInQuarantineAfterDay(0);
+		tracingConfig.setTracingDelay_days(0);
+
+		List<List<EpisimPerson.DiseaseStatus>> results = new ArrayList<>();
+
+		for (int threads : new int[]{1, 4}) {
 
+			ConfigurableProgressionModel model = new ConfigurableProgressionModel(new SplittableRandom(1), episimConfig, tracingConfig);
+
+			List<EpisimPerson> persons = new ArrayList<>();
+			for (int i = 0; i < 500; i++) {
+				EpisimPerson p = EpisimTestUtils.createPerson(Id.createPersonId("parallel" + i), reporting);
+				p.setDiseaseStatus(0, DiseaseStatus.infectedButNotContagious);
+				persons.add(p);
+			}
+
+			for (int day = 0; day <= 20; day++) {
+				model.setIteration(day);
+				model.updateStates(persons, day, threads);
+			}
+
+			List<EpisimPerson.DiseaseStatus> status = new ArrayList<>();
+			persons.forEach(p -> status.add(p.getDiseaseStatus()));
+			results.add(status);
+		}
+
+		assertThat(results.get(0)).isEqualTo(results.get(1));
+		assertThat(results.get(0)).contains(DiseaseStatus.recovered);
+	}
+
+	@Test
+	public void personSeeds() {
+
+		// the old xor of seed and index collided for swapped seeds and indices
+		Set<Long> seeds = new HashSet<>();
+		for (int day = 0; day < 10; day++) {
+			for (int i = 0; i < 1000; i++) {
+				seeds.add(AbstractProgressionModel.personSeed(1, day, i));
+				seeds.add(AbstractProgressionModel.personSeed(i, day, 1));
+			}
+		}
+
+		// (1, day, 1) is added twice per day
+		assertThat(seeds).hasSize(10 * (2 * 1000 - 1));
+		assertThat(AbstractProgressionModel.personSeed(1, 0, 0)).isNotEqualTo(AbstractProgressionModel.personSeed(1, 1, 0));
+	}
+
+	@Test
+	public void scheduledUpdates() {
+
+		tracingConfig.setPutTraceablePersonsInQuarantineAfterDay(0);
+		tracingConfig.setTracingDelay_days(2);
+
+		ConfigurableProgressionModel full = new ConfigurableProgressionModel(new SplittableRandom(1), episimConfig, tracingConfig);
+		ConfigurableProgressionModel scheduled = new ConfigurableProgressionModel(new SplittableRandom(1), episimConfig, tracingConfig);
+
+		List<EpisimPerson> a = new ArrayList<>();
+		List<EpisimPerson> b = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			a.add(EpisimTestUtils.createPerson(Id.createPersonId("scheduled" + i), reporting));
+			b.add(EpisimTestUtils.createPerson(Id.createPersonId("scheduled" + i), reporting));
+			a.get(i).setDiseaseStatus(0, DiseaseStatus.infectedButNotContagious);
+			b.get(i).setDiseaseStatus(0, DiseaseStatus.infectedButNotContagious);
+		}
+
+		for (int day = 0; day <= 30; day++) {
+
+			full.setIteration(day);
+			scheduled.setIteration(day);
+
+			BitSet due = scheduled.getScheduledPersons(day);
+
+			for (int i = 0; i < a.size(); i++) {
+				full.updateState(a.get(i), day);
+
+				// all persons have been infected on the first day
+				if (day == 0 || due.get(b.get(i).getPersonId().index())) {
+					scheduled.updateState(b.get(i), day);
+					scheduled.afterStateUpdate(b.get(i), day);
+				}
+
+				assertThat(b.get(i).getDiseaseStatus()).isEqualTo(a.get(i).getDiseaseStatus());
+				assertThat(b.get(i).getQuarantineStatus()).isEqualTo(a.get(i).getQuarantineStatus());
+			}
+		}
+	}
 }
@@ -139,6 +139,25 @@ public class DefaultContactModelTest {
 		assertThat(rate).isCloseTo(1, OFFSET);
 	}
 
+	@Test
+	public void noInteractionPossible() {
+
+		InfectionEventHandler.EpisimFacility container = EpisimTestUtils.createFacility(3, "c10", p -> {});
+		EpisimPerson leaving = EpisimTestUtils.createPerson("c10", container);
+
+		// only susceptible persons
+		assertThat(AbstractContactModel.noInteractionPossible(leaving, container)).isTrue();
+
+		EpisimPerson contagious = EpisimTestUtils.createPerson("c10", container);
+		contagious.setDiseaseStatus(0, EpisimPerson.DiseaseStatus.contagious);
+		assertThat(AbstractContactModel.noInteractionPossible(leaving, container)).isFalse();
+		assertThat(AbstractContactModel.noInteractionPossible(contagious, container)).isFalse();
+
+		contagious.setDiseaseStatus(0, EpisimPerson.DiseaseStatus.recovered);
+		assertThat(AbstractContactModel.noInteractionPossible(leaving, container)).isTrue();
+		assertThat(AbstractContactModel.noInteractionPossible(contagious, container)).isTrue();
+	}
+
 	@Test
 	public void noInfection() {
 		double now = 0d;
@@ -169,6 +188,7 @@ public class DefaultContactModelTest {
 
 		// no infections without contact intensity
 		restrictions.put("c10", Restriction.of(1.0, 0.0));
+		model.setRestrictionsForIteration(1, restrictions);
 		rate = sampleInfectionRate(Duration.ofHours(2), "c10",
 				() -> EpisimTestUtils.createFacility(1, "c10", EpisimTestUtils.CONTAGIOUS),
 				(f) -> EpisimTestUtils.createPerson("c10", f)
@@ -0,0 +1,52 @@
+package org.matsim.episim.model;
+
+import org.junit.Test;
+import org.matsim.episim.EpisimConfigGroup;
+import org.matsim.episim.EpisimTestUtils;
+import org.matsim.episim.policy.Restriction;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InfectionKernelTest {
+
+	@Test
+	public void ciCorrection() {
+
+		EpisimConfigGroup config = EpisimTestUtils.TEST_CONFIG;
+		InfectionKernel kernel = new InfectionKernel(config);
+
+		Map<String, Restriction> restrictions = config.createInitialRestrictions();
+		restrictions.put("c10", Restriction.of(1.0, 0.5, Map.of(FaceMask.CLOTH, 0.4)));
+
+		kernel.update(restrictions);
+
+		EpisimConfigGroup.InfectionParams c5 = config.selectInfectionParams("c5");
+		EpisimConfigGroup.InfectionParams c10 = config.selectInfectionParams("c10");
+
+		assertThat(kernel.getCiCorrection(c5, c10, restrictions)).isEqualTo(0.5);
+		assertThat(kernel.getCiCorrection(c10, c10, restrictions)).isEqualTo(0.5);
+		assertThat(kernel.getCiCorrection(c5, c5, restrictions)).isEqualTo(1.0);
+
+		Restriction compiled = kernel.getRestriction(c10, restrictions);
+		assertThat(compiled).isNotSameAs(restrictions.get("c10"));
+		assertThat(compiled.getCiCorrection()).isEqualTo(0.5);
+		assertThat(compiled.determineMask(new SplittableRandom(1)))
+				.isEqualTo(restrictions.get("c10").determineMask(new SplittableRandom(1)));
+
+		// the kernel keeps the values of the day
+		restrictions.put("c10", Restriction.of(1.0, 0.25));
+		assertThat(kernel.getCiCorrection(c5, c10, restrictions)).isEqualTo(0.5);
+		assertThat(kernel.getRestriction(c10, restrictions)).isSameAs(compiled);
+
+		kernel.update(restrictions);
+		assertThat(kernel.getCiCorrection(c10, c10, restrictions)).isEqualTo(0.25);
+
+		// other restrictions are not compiled
+		Map<String, Restriction> other = config.createInitialRestrictions();
+		assertThat(kernel.getCiCorrection(c5, c10, other)).isEqualTo(1.0);
+		assertThat(kernel.getRestriction(c10, other)).isSameAs(other.get("c10"));
+	}
+}
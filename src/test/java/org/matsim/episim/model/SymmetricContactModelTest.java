@@ -0,0 +1,39 @@
+package org.matsim.episim.model;
+
+import org.assertj.core.data.Offset;
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SymmetricContactModelTest {
+
+	@Test
+	public void geometricSampling() {
+
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		int size = 50;
+		int runs = 100_000;
+
+		for (double probability : new double[]{0.01, 0.1, 0.5}) {
+
+			int[] contacts = new int[size];
+			for (int n = 0; n < runs; n++) {
+				for (int i = SymmetricContactModel.nextContact(rnd, -1, size, probability); i < size;
+					 i = SymmetricContactModel.nextContact(rnd, i, size, probability)) {
+					contacts[i]++;
+				}
+			}
+
+			// every position is contacted with the same probability
+			for (int c : contacts) {
+				assertThat(c / (double) runs).isCloseTo(probability, Offset.offset(0.01));
+			}
+		}
+
+		assertThat(SymmetricContactModel.nextContact(rnd, 3, size, 1)).isEqualTo(4);
+		assertThat(SymmetricContactModel.nextContact(rnd, 3, size, 0)).isEqualTo(size);
+	}
+}